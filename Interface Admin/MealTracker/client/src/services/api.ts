@@ -44,8 +44,10 @@ export const api = {
 
   // === Messages ===
   getMessages: async (interventionId: number): Promise<Message[]> => {
-    const response = await apiRequest('GET', `${API_BASE_URL}/api/v1/admin/interventions/${interventionId}/messages`);
-    return response.json();
+    // Endpoint paginé : seule la page des messages les plus récents est affichée
+    const response = await apiRequest('GET', `${API_BASE_URL}/api/v1/admin/interventions/${interventionId}/messages?limit=200`);
+    const page: { items: Message[]; nextCursor: string | null } = await response.json();
+    return page.items;
   },
 
   sendMessage: async (interventionId: number, request: CreateMessageRequest): Promise<void> => {
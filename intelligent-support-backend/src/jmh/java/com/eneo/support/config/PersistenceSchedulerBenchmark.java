@@ -0,0 +1,62 @@
+package com.eneo.support.config;
+
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Durée d'une rafale de {@code requests} appels bloquants simultanés (aller-retour JDBC simulé de {@code latencyMillis})
+ * selon le scheduler de persistance : {@code boundedElastic} (plafonné à 10 threads par cœur, le reste attend en file)
+ * ou {@code virtual} (un thread virtuel par appel, Java 21+ uniquement : le paramètre échoue en Java 17).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceSchedulerBenchmark {
+
+    @Param({"boundedElastic", "virtual"})
+    public String mode;
+
+    @Param({"100", "1000"})
+    public int requests;
+
+    @Param({"2"})
+    public int latencyMillis;
+
+    private Scheduler scheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        scheduler = switch (mode) {
+            case "virtual" -> Schedulers.fromExecutorService(PersistenceSchedulerConfig.newVirtualThreadExecutor()
+                    .orElseThrow(() -> new IllegalStateException("Threads virtuels indisponibles sur Java " + Runtime.version().feature())));
+            default -> Schedulers.newBoundedElastic(Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+                    Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "bench-elastic");
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.dispose();
+    }
+
+    @Benchmark
+    public Long burst() {
+        long latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        return Flux.range(0, requests)
+                .flatMap(i -> Mono.fromCallable(() -> {
+                    LockSupport.parkNanos(latencyNanos);
+                    return i;
+                }).subscribeOn(scheduler), requests)
+                .count()
+                .block();
+    }
+}
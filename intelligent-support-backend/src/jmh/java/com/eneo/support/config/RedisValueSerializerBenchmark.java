@@ -0,0 +1,59 @@
+package com.eneo.support.config;
+
+import com.eneo.support.dto.AgentLocationRequest;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût du sérialiseur de valeurs Redis ({@link RedisConfig#valueSerializer()}, avec default typing)
+ * sur une position d'agent, comparé à un sérialiseur typé qui n'écrit pas le nom de la classe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisValueSerializerBenchmark {
+
+    private final RedisSerializer<Object> defaultTyping = RedisConfig.valueSerializer();
+    private final RedisSerializer<AgentLocationRequest> typed = new Jackson2JsonRedisSerializer<>(AgentLocationRequest.class);
+
+    private AgentLocationRequest location;
+    private byte[] defaultTypingBytes;
+    private byte[] typedBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        location = new AgentLocationRequest();
+        location.setAgentId(1234L);
+        location.setLatitude(4.0511);
+        location.setLongitude(9.7679);
+        location.setTimestamp(1_714_558_530_000L);
+        defaultTypingBytes = defaultTyping.serialize(location);
+        typedBytes = typed.serialize(location);
+    }
+
+    @Benchmark
+    public byte[] serializeDefaultTyping() {
+        return defaultTyping.serialize(location);
+    }
+
+    @Benchmark
+    public Object deserializeDefaultTyping() {
+        return defaultTyping.deserialize(defaultTypingBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeTyped() {
+        return typed.serialize(location);
+    }
+
+    @Benchmark
+    public AgentLocationRequest deserializeTyped() {
+        return typed.deserialize(typedBytes);
+    }
+}
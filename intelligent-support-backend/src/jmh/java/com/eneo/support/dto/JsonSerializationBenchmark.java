@@ -0,0 +1,84 @@
+package com.eneo.support.dto;
+
+import com.eneo.support.model.Agent;
+import com.eneo.support.model.Intervention;
+import com.eneo.support.model.InterventionStatus;
+import com.eneo.support.model.Message;
+import com.eneo.support.model.SenderType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sérialisation JSON des objets renvoyés par l'API, avec un ObjectMapper configuré comme celui de Spring Boot.
+ * L'intervention porte 3 agents et 20 messages, comme une conversation typique.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private Intervention intervention;
+    private Message message;
+    private AgentStatusResponse agentStatus;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Instant now = Instant.parse("2024-05-01T10:15:30Z");
+        intervention = new Intervention();
+        intervention.setId(42L);
+        intervention.setZammadTicketId(1042L);
+        intervention.setStatus(InterventionStatus.ASSIGNE);
+        intervention.setProblemDescription("Coupure de courant depuis ce matin dans tout le quartier, le transformateur fait du bruit.");
+        intervention.setLatitude(4.0511);
+        intervention.setLongitude(9.7679);
+        intervention.setCustomerId(7L);
+        intervention.setCreatedAt(now);
+        intervention.setUpdatedAt(now);
+        for (long id = 1; id <= 3; id++) {
+            Agent agent = new Agent();
+            agent.setId(id);
+            agent.setFirstName("Agent");
+            agent.setLastName("N° " + id);
+            agent.setAvailable(true);
+            agent.setLastSeenAt(now);
+            agent.setLastLatitude(4.05);
+            agent.setLastLongitude(9.76);
+            intervention.getAssignedAgents().add(agent);
+        }
+        for (long id = 1; id <= 20; id++) {
+            Message m = new Message();
+            m.setId(id);
+            m.setIntervention(intervention);
+            m.setSenderType(id % 2 == 0 ? SenderType.ADMIN : SenderType.CUSTOMER);
+            m.setTimestamp(now.plusSeconds(id * 30));
+            m.setContent("Message " + id + " : un technicien est en route vers votre domicile. Merci de rester joignable.");
+            intervention.getMessages().add(m);
+        }
+        message = intervention.getMessages().get(0);
+        agentStatus = new AgentStatusResponse(1L, "Agent", "N° 1", true, now, 4.05, 9.76, "En ligne");
+    }
+
+    @Benchmark
+    public byte[] intervention() throws Exception {
+        return objectMapper.writeValueAsBytes(intervention);
+    }
+
+    @Benchmark
+    public byte[] message() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] agentStatus() throws Exception {
+        return objectMapper.writeValueAsBytes(agentStatus);
+    }
+}
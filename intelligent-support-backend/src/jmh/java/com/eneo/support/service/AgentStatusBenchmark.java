@@ -0,0 +1,66 @@
+package com.eneo.support.service;
+
+import com.eneo.support.dto.AgentStatusResponse;
+import com.eneo.support.model.Agent;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calcul du statut d'une page d'agents ({@code AgentService.toStatusResponse}) à partir des données lues dans Redis
+ * (présence, position "lat,lon") et en base. La moitié des agents est en ligne ; 1 % n'est pas encore persisté.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentStatusBenchmark {
+
+    @Param({"10000"})
+    public int agents;
+
+    private final List<Long> ids = new ArrayList<>();
+    private final List<Long> lastSeen = new ArrayList<>();
+    private final List<String> positions = new ArrayList<>();
+    private final Map<Long, Agent> persisted = new HashMap<>();
+    private long threshold;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        long now = Instant.now().toEpochMilli();
+        threshold = now - Duration.ofMinutes(5).toMillis();
+        for (long id = 1; id <= agents; id++) {
+            ids.add(id);
+            lastSeen.add(now - random.nextInt((int) Duration.ofMinutes(10).toMillis()));
+            positions.add((4.05 + random.nextGaussian() * 0.3) + "," + (9.70 + random.nextGaussian() * 0.3));
+            if (id % 100 != 0) {
+                Agent agent = new Agent();
+                agent.setId(id);
+                agent.setFirstName("Agent");
+                agent.setLastName("N° " + id);
+                agent.setAvailable(random.nextBoolean());
+                persisted.put(id, agent);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<AgentStatusResponse> statusPage() {
+        List<AgentStatusResponse> items = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            items.add(AgentService.toStatusResponse(id, lastSeen.get(i), positions.get(i), persisted.get(id), threshold));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,90 @@
+package com.eneo.support.service;
+
+import com.eneo.support.model.Intervention;
+import com.eneo.support.model.Message;
+import com.eneo.support.model.SenderType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût d'une diffusion de message de chat à un salon de N clients.
+ * {@code legacy} reproduit l'ancien chemin (entité sérialisée en String, réencodée pour chaque session),
+ * {@code serializeOnce} le chemin actuel (DTO encodé une fois, octets partagés entre les sessions).
+ * Lancer avec {@code -prof gc} et comparer {@code gc.alloc.rate.norm} (octets alloués par diffusion).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatBroadcastBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int subscribers;
+
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    // L'ancien ObjectMapper privé ne savait pas sérialiser Instant : on lui ajoute le module pour pouvoir le mesurer
+    private final ObjectMapper legacyMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private Message message;
+    private Sinks.Many<String> legacySink;
+    private ChatRoom room;
+    private final List<Disposable> subscriptions = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        Intervention intervention = new Intervention();
+        intervention.setId(42L);
+        message = new Message();
+        message.setId(1234L);
+        message.setIntervention(intervention);
+        message.setSenderType(SenderType.ADMIN);
+        message.setTimestamp(Instant.parse("2024-05-01T10:15:30Z"));
+        message.setContent("Bonjour, un technicien est en route vers votre domicile. Merci de rester joignable.");
+
+        legacySink = Sinks.many().multicast().onBackpressureBuffer();
+        room = new ChatRoom(42L);
+        for (int i = 0; i < subscribers; i++) {
+            subscriptions.add(legacySink.asFlux()
+                    .map(json -> new WebSocketMessage(WebSocketMessage.Type.TEXT,
+                            bufferFactory.wrap(json.getBytes(StandardCharsets.UTF_8))))
+                    .subscribe(blackhole::consume));
+            subscriptions.add(room.subscribe(SlowConsumerPolicy.DROP_OLDEST, 256, dropped -> { })
+                    .map(json -> ChatFrames.textMessage(bufferFactory, json))
+                    .subscribe(blackhole::consume));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        subscriptions.forEach(Disposable::dispose);
+        subscriptions.clear();
+        room.close();
+    }
+
+    @Benchmark
+    public Sinks.EmitResult legacy() throws Exception {
+        return legacySink.tryEmitNext(legacyMapper.writeValueAsString(message));
+    }
+
+    @Benchmark
+    public Sinks.EmitResult serializeOnce() throws Exception {
+        return room.emit(ChatFrames.encode(objectMapper, 42L, message));
+    }
+}
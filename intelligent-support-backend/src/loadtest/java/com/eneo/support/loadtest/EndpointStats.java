@@ -0,0 +1,39 @@
+package com.eneo.support.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latences (HdrHistogram, en microsecondes) et erreurs d'un endpoint pendant un tir de charge.
+ */
+public class EndpointStats {
+
+    private final Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+    private final LongAdder errors = new LongAdder();
+
+    public void record(long startNanos, boolean success) {
+        latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos), latencies.getHighestTrackableValue()));
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    public long count() {
+        return latencies.getTotalCount();
+    }
+
+    public long errors() {
+        return errors.sum();
+    }
+
+    /**
+     * @param percentile Par exemple 99.9.
+     * @return la latence en millisecondes.
+     */
+    public double percentileMillis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000d;
+    }
+}
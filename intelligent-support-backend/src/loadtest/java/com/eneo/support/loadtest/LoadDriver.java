@@ -0,0 +1,183 @@
+package com.eneo.support.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Générateur de charge : N agents envoient leur position à intervalle régulier, M clients mènent des conversations
+ * (un premier message qui crée l'intervention, puis des messages de suivi), et des administrateurs écoutent
+ * les salons de chat en WebSocket. Les latences sont mesurées par endpoint.
+ */
+public class LoadDriver {
+
+    public static final String AGENT_LOCATION = "POST /api/v1/agent/location";
+    public static final String CHAT_FIRST = "POST /api/v1/chat/message (premier)";
+    public static final String CHAT_FOLLOW_UP = "POST /api/v1/chat/message (suivi)";
+    public static final String WS_CONNECT = "WS /ws/chat/{id} (connexion)";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final URI baseUri;
+    private final Settings settings;
+    private final ExecutorService httpExecutor = Executors.newFixedThreadPool(16);
+    private final HttpClient client;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+    private final Map<String, EndpointStats> stats = new ConcurrentSkipListMap<>();
+    private final LongAdder receivedFrames = new LongAdder();
+    private volatile boolean running;
+
+    /**
+     * Paramètres d'un tir.
+     */
+    public record Settings(int agents, Duration agentInterval, int customers, Duration customerThinkTime,
+                           int followUpsPerSession, int listeners) {
+    }
+
+    public LoadDriver(URI baseUri, Settings settings) {
+        this.baseUri = baseUri;
+        this.settings = settings;
+        this.client = HttpClient.newBuilder()
+                .executor(httpExecutor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * Lance la charge pendant {@code duration}, puis attend la fin des requêtes en cours.
+     * @return les statistiques par endpoint.
+     */
+    public Map<String, EndpointStats> run(Duration duration) throws InterruptedException {
+        running = true;
+        List<WebSocket> sockets = openListeners();
+        for (long agentId = 1; agentId <= settings.agents(); agentId++) {
+            long id = agentId;
+            long interval = settings.agentInterval().toMillis();
+            scheduler.scheduleAtFixedRate(() -> pingLocation(id), ThreadLocalRandom.current().nextLong(interval), interval, TimeUnit.MILLISECONDS);
+        }
+        for (int customer = 0; customer < settings.customers(); customer++) {
+            scheduler.schedule(() -> startSession(), ThreadLocalRandom.current().nextLong(settings.customerThinkTime().toMillis() + 1), TimeUnit.MILLISECONDS);
+        }
+
+        Thread.sleep(duration.toMillis());
+        running = false;
+        scheduler.shutdownNow();
+        // Laisse les requêtes en vol se terminer
+        Thread.sleep(settings.customerThinkTime().toMillis() + 2000);
+        sockets.forEach(socket -> socket.abort());
+        httpExecutor.shutdownNow();
+        return stats;
+    }
+
+    public long receivedFrames() {
+        return receivedFrames.sum();
+    }
+
+    private void pingLocation(long agentId) {
+        if (!running) {
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ObjectNode body = objectMapper.createObjectNode()
+                .put("agentId", agentId)
+                .put("latitude", 4.05 + random.nextGaussian() * 0.1)
+                .put("longitude", 9.70 + random.nextGaussian() * 0.1);
+        post("/api/v1/agent/location", body, AGENT_LOCATION);
+    }
+
+    private void startSession() {
+        String sessionId = UUID.randomUUID().toString();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ObjectNode body = objectMapper.createObjectNode()
+                .put("sessionId", sessionId)
+                .put("message", "Coupure de courant dans mon quartier depuis ce matin.")
+                .put("email", "client-" + sessionId + "@example.cm")
+                .put("firstName", "Client")
+                .put("lastName", "Test")
+                .put("latitude", 4.05 + random.nextGaussian() * 0.1)
+                .put("longitude", 9.70 + random.nextGaussian() * 0.1);
+        post("/api/v1/chat/message", body, CHAT_FIRST).thenRun(() -> scheduleFollowUp(sessionId, settings.followUpsPerSession()));
+    }
+
+    private void scheduleFollowUp(String sessionId, int remaining) {
+        if (!running) {
+            return;
+        }
+        Runnable next = remaining > 0 ? () -> followUp(sessionId, remaining) : this::startSession;
+        try {
+            scheduler.schedule(next, settings.customerThinkTime().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Fin du tir
+        }
+    }
+
+    private void followUp(String sessionId, int remaining) {
+        ObjectNode body = objectMapper.createObjectNode()
+                .put("sessionId", sessionId)
+                .put("message", "Toujours pas de courant, merci de me tenir informé.");
+        post("/api/v1/chat/message", body, CHAT_FOLLOW_UP).thenRun(() -> scheduleFollowUp(sessionId, remaining - 1));
+    }
+
+    private CompletionStage<Void> post(String path, ObjectNode body, String endpoint) {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+        long start = System.nanoTime();
+        EndpointStats endpointStats = stats.computeIfAbsent(endpoint, e -> new EndpointStats());
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    endpointStats.record(start, error == null && response.statusCode() < 400);
+                    return null;
+                });
+    }
+
+    /**
+     * Ouvre les écoutes WebSocket sur les salons des premières interventions (identifiants 1 à {@code listeners}).
+     */
+    private List<WebSocket> openListeners() {
+        List<WebSocket> sockets = new ArrayList<>();
+        EndpointStats connectStats = stats.computeIfAbsent(WS_CONNECT, e -> new EndpointStats());
+        String wsBase = "ws://" + baseUri.getHost() + ":" + baseUri.getPort();
+        for (int i = 1; i <= settings.listeners(); i++) {
+            long start = System.nanoTime();
+            try {
+                sockets.add(client.newWebSocketBuilder()
+                        .buildAsync(URI.create(wsBase + "/ws/chat/" + i), new WebSocket.Listener() {
+                            @Override
+                            public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                                if (last) {
+                                    receivedFrames.increment();
+                                }
+                                webSocket.request(1);
+                                return null;
+                            }
+                        })
+                        .get(10, TimeUnit.SECONDS));
+                connectStats.record(start, true);
+            } catch (Exception e) {
+                connectStats.record(start, false);
+            }
+        }
+        return sockets;
+    }
+}
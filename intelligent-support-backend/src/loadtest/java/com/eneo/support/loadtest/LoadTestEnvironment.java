@@ -0,0 +1,73 @@
+package com.eneo.support.loadtest;
+
+import com.eneo.support.IntelligentSupportBackendApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Démarre tout ce dont l'application a besoin sans service externe : Postgres et Redis jetables (conteneurs
+ * Testcontainers, Docker requis), le faux Zammad, puis l'application elle-même sur un port libre.
+ * Redis tourne pour de vrai car l'application s'appuie sur ses scripts Lua, que les simulateurs en mémoire
+ * n'implémentent pas.
+ */
+public class LoadTestEnvironment implements AutoCloseable {
+
+    private final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:16-alpine"));
+    private final GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+    private final StubZammadServer zammad;
+    private ConfigurableApplicationContext application;
+
+    public LoadTestEnvironment(StubZammadServer zammad) {
+        this.zammad = zammad;
+    }
+
+    /**
+     * @param overrides Propriétés de l'application à remplacer (mode de création, threads virtuels...).
+     */
+    public LoadTestEnvironment start(Map<String, Object> overrides) {
+        postgres.start();
+        redis.start();
+        zammad.start();
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("spring.datasource.url", postgres.getJdbcUrl() + "&reWriteBatchedInserts=true");
+        properties.put("spring.datasource.username", postgres.getUsername());
+        properties.put("spring.datasource.password", postgres.getPassword());
+        properties.put("spring.data.redis.host", redis.getHost());
+        properties.put("spring.data.redis.port", redis.getMappedPort(6379));
+        properties.put("zammad.api.base-url", zammad.baseUrl());
+        properties.put("zammad.api.token", "loadtest");
+        properties.put("gemini.api.key", "loadtest");
+        properties.put("spring.jpa.show-sql", false);
+        properties.put("logging.level.root", "WARN");
+        properties.putAll(overrides);
+
+        // Passées en arguments de ligne de commande pour l'emporter sur application.properties
+        String[] args = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+        application = SpringApplication.run(IntelligentSupportBackendApplication.class, args);
+        return this;
+    }
+
+    public int port() {
+        return Integer.parseInt(application.getEnvironment().getProperty("local.server.port"));
+    }
+
+    @Override
+    public void close() {
+        if (application != null) {
+            application.close();
+        }
+        zammad.close();
+        redis.stop();
+        postgres.stop();
+    }
+}
@@ -0,0 +1,63 @@
+package com.eneo.support.loadtest;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tir de charge hors ligne : mvn -Ploadtest test-compile exec:exec
+ * Paramètres (propriétés système, voir le profil loadtest du pom) :
+ * loadtest.agents, loadtest.agent-interval, loadtest.customers, loadtest.think-time, loadtest.follow-ups,
+ * loadtest.listeners, loadtest.duration, loadtest.zammad.latency, loadtest.zammad.jitter, loadtest.zammad.error-rate.
+ * Toute propriété {@code loadtest.app.<clé>} est transmise à l'application ({@code <clé>}).
+ */
+public final class LoadTestMain {
+
+    private LoadTestMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadDriver.Settings settings = new LoadDriver.Settings(
+                Integer.getInteger("loadtest.agents", 500),
+                duration("loadtest.agent-interval", "PT5S"),
+                Integer.getInteger("loadtest.customers", 100),
+                duration("loadtest.think-time", "PT2S"),
+                Integer.getInteger("loadtest.follow-ups", 5),
+                Integer.getInteger("loadtest.listeners", 20));
+        Duration duration = duration("loadtest.duration", "PT60S");
+
+        Map<String, Object> overrides = new HashMap<>();
+        System.getProperties().forEach((key, value) -> {
+            if (key.toString().startsWith("loadtest.app.")) {
+                overrides.put(key.toString().substring("loadtest.app.".length()), value);
+            }
+        });
+
+        StubZammadServer zammad = new StubZammadServer(
+                duration("loadtest.zammad.latency", "PT0.05S"),
+                duration("loadtest.zammad.jitter", "PT0.02S"),
+                Double.parseDouble(System.getProperty("loadtest.zammad.error-rate", "0.01")));
+
+        try (LoadTestEnvironment environment = new LoadTestEnvironment(zammad).start(overrides)) {
+            LoadDriver driver = new LoadDriver(URI.create("http://127.0.0.1:" + environment.port()), settings);
+            Map<String, EndpointStats> stats = driver.run(duration);
+            printReport(stats, duration, driver.receivedFrames(), zammad);
+        }
+    }
+
+    private static void printReport(Map<String, EndpointStats> stats, Duration duration, long receivedFrames, StubZammadServer zammad) {
+        double seconds = duration.toMillis() / 1000d;
+        System.out.printf("%n%-40s %10s %8s %10s %10s %10s %10s%n", "Endpoint", "Requêtes", "Erreurs", "req/s", "p50 ms", "p99 ms", "p999 ms");
+        stats.forEach((endpoint, s) -> System.out.printf("%-40s %10d %8d %10.1f %10.2f %10.2f %10.2f%n",
+                endpoint, s.count(), s.errors(), s.count() / seconds,
+                s.percentileMillis(50), s.percentileMillis(99), s.percentileMillis(99.9)));
+        System.out.printf("%nMessages reçus par les écoutes WebSocket : %d%n", receivedFrames);
+        System.out.printf("Appels au faux Zammad (dont %d erreurs injectées) :%n", zammad.injectedErrors());
+        zammad.calls().forEach((route, count) -> System.out.printf("  %-30s %d%n", route, count.sum()));
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        return Duration.parse(System.getProperty(property, defaultValue));
+    }
+}
@@ -0,0 +1,189 @@
+package com.eneo.support.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serveur HTTP local qui imite l'API Zammad utilisée par {@code ZammadService} :
+ * {@code GET /users/search}, {@code POST /users}, {@code POST /tickets}, {@code GET /tickets/search} (sur la note),
+ * {@code PUT /tickets/{id}} et {@code POST /ticket_articles}. Chaque réponse est retardée de {@code latency} (± {@code jitter})
+ * et une fraction {@code errorRate} des appels répond 503, pour éprouver l'outbox et le disjoncteur.
+ */
+public class StubZammadServer implements AutoCloseable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Duration latency;
+    private final Duration jitter;
+    private final double errorRate;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Long> usersByQuery = new ConcurrentHashMap<>();
+    private final AtomicLong userIds = new AtomicLong();
+    private final AtomicLong ticketIds = new AtomicLong();
+    private final Map<String, ObjectNode> ticketsByNote = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final LongAdder injectedErrors = new LongAdder();
+
+    public StubZammadServer(Duration latency, Duration jitter, double errorRate) throws IOException {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.errorRate = errorRate;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        server.createContext("/api/v1/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public StubZammadServer start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * URL de base à donner à {@code zammad.api.base-url}.
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1";
+    }
+
+    public Map<String, LongAdder> calls() {
+        return calls;
+    }
+
+    public long injectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath().substring("/api/v1".length());
+            String route = method + " " + path.replaceAll("/\\d+", "/{id}");
+            calls.computeIfAbsent(route, r -> new LongAdder()).increment();
+            JsonNode body = readBody(exchange.getRequestBody());
+
+            sleep();
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.increment();
+                send(exchange, 503, null);
+                return;
+            }
+
+            switch (route) {
+                case "GET /users/search" -> {
+                    Long id = usersByQuery.get(queryParam(exchange, "query"));
+                    send(exchange, 200, id == null ? objectMapper.createArrayNode()
+                            : objectMapper.createArrayNode().add(user(id, null)));
+                }
+                case "POST /users" -> {
+                    long id = userIds.incrementAndGet();
+                    String email = body.path("email").asText(null);
+                    String phone = body.path("phone").asText(null);
+                    if (email != null) {
+                        usersByQuery.put(email, id);
+                    }
+                    if (phone != null) {
+                        usersByQuery.put(phone, id);
+                    }
+                    send(exchange, 201, user(id, body));
+                }
+                case "POST /tickets" -> {
+                    ObjectNode ticket = objectMapper.createObjectNode()
+                            .put("id", ticketIds.incrementAndGet())
+                            .put("customer_id", body.path("customer_id").asLong());
+                    String note = body.path("note").asText(null);
+                    if (note != null) {
+                        ticketsByNote.put(note, ticket);
+                    }
+                    send(exchange, 201, ticket);
+                }
+                case "GET /tickets/search" -> {
+                    // Requête de la forme note:"<référence>"
+                    String query = queryParam(exchange, "query");
+                    ObjectNode ticket = query == null ? null : ticketsByNote.get(query.replaceFirst("^note:\"(.*)\"$", "$1"));
+                    send(exchange, 200, ticket == null ? objectMapper.createArrayNode() : objectMapper.createArrayNode().add(ticket));
+                }
+                case "PUT /tickets/{id}", "POST /ticket_articles" -> send(exchange, 200, objectMapper.createObjectNode());
+                default -> send(exchange, 404, null);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ObjectNode user(long id, JsonNode request) {
+        ObjectNode user = objectMapper.createObjectNode().put("id", id);
+        if (request != null) {
+            user.put("firstname", request.path("firstname").asText())
+                    .put("lastname", request.path("lastname").asText());
+        }
+        return user;
+    }
+
+    private void sleep() {
+        long millis = latency.toMillis();
+        if (!jitter.isZero()) {
+            millis += ThreadLocalRandom.current().nextLong(-jitter.toMillis(), jitter.toMillis() + 1);
+        }
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private JsonNode readBody(InputStream in) throws IOException {
+        byte[] bytes = in.readAllBytes();
+        return bytes.length == 0 ? objectMapper.createObjectNode() : objectMapper.readTree(bytes);
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int separator = pair.indexOf('=');
+                if (separator > 0 && pair.substring(0, separator).equals(name)) {
+                    return URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = body == null ? new byte[0] : objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,72 @@
+package com.eneo.support.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limite le débit des journaux INFO (et en dessous) des chemins chauds : au plus {@code maxPerSecond}
+ * événements par seconde et par logger, le reste est abandonné avant toute mise en forme.
+ * Les WARN et ERROR passent toujours. Déclaré dans logback-spring.xml :
+ * <pre>
+ * &lt;turboFilter class="com.eneo.support.config.HotPathLogSampler"&gt;
+ *     &lt;logger&gt;com.eneo.support.service.AgentService&lt;/logger&gt;
+ *     &lt;maxPerSecond&gt;10&lt;/maxPerSecond&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ */
+public class HotPathLogSampler extends TurboFilter {
+
+    /**
+     * Fenêtre d'une seconde : le compteur est remis à zéro au changement de seconde.
+     */
+    private static final class Window {
+        private final AtomicLong second = new AtomicLong();
+        private final AtomicLong count = new AtomicLong();
+    }
+
+    private final List<String> loggers = new ArrayList<>();
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private int maxPerSecond = 10;
+
+    public void addLogger(String name) {
+        loggers.add(name.trim());
+    }
+
+    public void setMaxPerSecond(int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // format == null : simple test isXxxEnabled(), qui ne consomme pas de place dans la fenêtre
+        if (!isStarted() || format == null || level.isGreaterOrEqual(Level.WARN)
+                || !level.isGreaterOrEqual(logger.getEffectiveLevel()) || !isSampled(logger.getName())) {
+            return FilterReply.NEUTRAL;
+        }
+        Window window = windows.computeIfAbsent(logger.getName(), name -> new Window());
+        long now = System.currentTimeMillis() / 1000;
+        long current = window.second.get();
+        if (current != now && window.second.compareAndSet(current, now)) {
+            window.count.set(0);
+        }
+        return window.count.incrementAndGet() <= maxPerSecond ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    private boolean isSampled(String loggerName) {
+        for (String prefix : loggers) {
+            if (loggerName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
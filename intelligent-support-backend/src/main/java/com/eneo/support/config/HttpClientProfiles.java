@@ -0,0 +1,130 @@
+package com.eneo.support.config;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.common.KeyValues;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.logging.LogLevel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientRequestObservationContext;
+import org.springframework.web.reactive.function.client.DefaultClientRequestObservationConvention;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.logging.AdvancedByteBufFormat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fabrique des {@link WebClient} à partir des profils {@code http.clients.<nom>}.
+ * Les clients sont construits depuis le {@link WebClient.Builder} de Spring Boot : chaque requête alimente
+ * la métrique {@code http.client.requests}, étiquetée par route (modèle d'URI) et par profil ({@code client.profile}).
+ * Les pools de connexions publient leurs propres métriques ({@code reactor.netty.connection.provider.*}).
+ */
+@Component
+public class HttpClientProfiles {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientProfiles.class);
+    private static final String WIRETAP_LOGGER = "reactor.netty.http.client.HttpClient";
+
+    private final HttpClientProperties properties;
+    private final ObjectProvider<WebClient.Builder> webClientBuilders;
+    private final Map<String, ConnectionProvider> connectionProviders = new ConcurrentHashMap<>();
+
+    public HttpClientProfiles(HttpClientProperties properties, ObjectProvider<WebClient.Builder> webClientBuilders) {
+        this.properties = properties;
+        this.webClientBuilders = webClientBuilders;
+    }
+
+    /**
+     * Builder préconfiguré pour le profil donné (profil par défaut s'il n'est pas déclaré).
+     */
+    public WebClient.Builder builder(String profileName) {
+        HttpClientProperties.Profile profile = properties.getClients()
+                .getOrDefault(profileName, new HttpClientProperties.Profile());
+
+        WebClient.Builder builder = webClientBuilders.getObject()
+                .clientConnector(new ReactorClientHttpConnector(httpClient(profileName, profile)))
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .observationConvention(new ProfileObservationConvention(profileName));
+        if (profile.getWiretap() == HttpClientProperties.WiretapMode.SAMPLED) {
+            builder.filter(sampledLogging(profileName, profile.getWiretapSampleRate()));
+        }
+        return builder;
+    }
+
+    private HttpClient httpClient(String profileName, HttpClientProperties.Profile profile) {
+        ConnectionProvider provider = connectionProviders.computeIfAbsent(profileName, name -> ConnectionProvider.builder(name)
+                .maxConnections(profile.getMaxConnections())
+                .pendingAcquireMaxCount(profile.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(profile.getPendingAcquireTimeout())
+                .maxIdleTime(profile.getMaxIdleTime())
+                .maxLifeTime(profile.getMaxLifeTime())
+                .evictInBackground(profile.getEvictInBackground())
+                .metrics(true)
+                .build());
+
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.toIntExact(profile.getConnectTimeout().toMillis()))
+                .responseTimeout(profile.getResponseTimeout())
+                .protocol(profile.getProtocols().toArray(HttpProtocol[]::new))
+                .keepAlive(profile.isKeepAlive());
+        if (profile.getWiretap() == HttpClientProperties.WiretapMode.FULL) {
+            logger.warn("Traces HTTP complètes activées pour le client '{}' : ne pas utiliser en production", profileName);
+            httpClient = httpClient.wiretap(WIRETAP_LOGGER, LogLevel.INFO, AdvancedByteBufFormat.TEXTUAL);
+        }
+        return httpClient;
+    }
+
+    private static ExchangeFilterFunction sampledLogging(String profileName, double sampleRate) {
+        return (request, next) -> {
+            if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+                return next.exchange(request);
+            }
+            long start = System.nanoTime();
+            String route = request.attribute(WebClient.class.getName() + ".uriTemplate")
+                    .map(Object::toString)
+                    .orElse(request.url().getPath());
+            return next.exchange(request)
+                    .doOnNext(response -> logger.info("[{}] {} {} -> {} en {} ms", profileName, request.method(), route,
+                            response.statusCode().value(), (System.nanoTime() - start) / 1_000_000))
+                    .doOnError(error -> logger.info("[{}] {} {} -> échec en {} ms: {}", profileName, request.method(), route,
+                            (System.nanoTime() - start) / 1_000_000, error.getMessage()));
+        };
+    }
+
+    @PreDestroy
+    public void dispose() {
+        connectionProviders.values().forEach(ConnectionProvider::dispose);
+    }
+
+    /**
+     * Ajoute le nom du profil aux étiquettes de {@code http.client.requests}.
+     */
+    private static final class ProfileObservationConvention extends DefaultClientRequestObservationConvention {
+
+        private final KeyValue profileTag;
+
+        private ProfileObservationConvention(String profileName) {
+            this.profileTag = KeyValue.of("client.profile", profileName);
+        }
+
+        @Override
+        public KeyValues getLowCardinalityKeyValues(ClientRequestObservationContext context) {
+            return super.getLowCardinalityKeyValues(context).and(profileTag);
+        }
+    }
+}
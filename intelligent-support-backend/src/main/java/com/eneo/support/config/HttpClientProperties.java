@@ -0,0 +1,50 @@
+package com.eneo.support.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import reactor.netty.http.HttpProtocol;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profils nommés des clients HTTP sortants ({@code http.clients.<nom>.*}).
+ * Chaque profil dispose de son propre pool de connexions Netty et de ses délais.
+ */
+@Data
+@ConfigurationProperties(prefix = "http")
+public class HttpClientProperties {
+
+    private Map<String, Profile> clients = new LinkedHashMap<>();
+
+    public enum WiretapMode {
+        NONE,    // Aucune trace
+        SAMPLED, // Ligne de synthèse (méthode, route, statut, durée) pour une fraction des requêtes
+        FULL     // Contenu complet des échanges : à réserver au débogage local
+    }
+
+    @Data
+    public static class Profile {
+        // Pool de connexions
+        private int maxConnections = 50;
+        private int pendingAcquireMaxCount = 500;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictInBackground = Duration.ofSeconds(30);
+
+        // Délais
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration responseTimeout = Duration.ofSeconds(10);
+
+        // Protocole
+        private List<HttpProtocol> protocols = List.of(HttpProtocol.HTTP11);
+        private boolean keepAlive = true;
+
+        // Traces
+        private WiretapMode wiretap = WiretapMode.NONE;
+        private double wiretapSampleRate = 0.01;
+    }
+}
@@ -0,0 +1,66 @@
+package com.eneo.support.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import reactor.core.observability.micrometer.Micrometer;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scheduler Reactor sur lequel sont exécutés les appels bloquants (JPA) des services réactifs.
+ * Avec {@code spring.threads.virtual.enabled=true} sur Java 21 ou plus, chaque appel s'exécute sur un thread virtuel :
+ * le même interrupteur bascule aussi Tomcat et les tâches planifiées sur des threads virtuels.
+ * Sinon (interrupteur absent, ou Java 17), on conserve {@code Schedulers.boundedElastic()}.
+ */
+@Configuration
+public class PersistenceSchedulerConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceSchedulerConfig.class);
+
+    /**
+     * Les tâches sont mesurées ({@code persistence.scheduler.tasks.*}) : en attente (file de boundedElastic),
+     * en cours et terminées, avec leur durée.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler persistenceScheduler(Environment environment, MeterRegistry meterRegistry) {
+        return Micrometer.timedScheduler(createScheduler(environment), meterRegistry, "persistence.scheduler");
+    }
+
+    private static Scheduler createScheduler(Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            Optional<ExecutorService> executor = newVirtualThreadExecutor();
+            if (executor.isPresent()) {
+                logger.info("Appels bloquants de persistance exécutés sur des threads virtuels.");
+                return Schedulers.fromExecutorService(executor.get(), "persistence-virtual");
+            }
+        }
+        logger.info("Appels bloquants de persistance exécutés sur boundedElastic.");
+        // Instance partagée de Reactor : dispose() est sans effet sur elle
+        return Schedulers.boundedElastic();
+    }
+
+    /**
+     * Exécuteur "un thread virtuel par tâche", obtenu par réflexion pour que le code compile en Java 17.
+     * @return vide si la JVM ne connaît pas les threads virtuels.
+     */
+    public static Optional<ExecutorService> newVirtualThreadExecutor() {
+        if (Runtime.version().feature() < 21) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Threads virtuels indisponibles: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
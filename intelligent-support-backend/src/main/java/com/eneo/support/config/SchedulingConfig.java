@@ -0,0 +1,13 @@
+package com.eneo.support.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Active les tâches planifiées (@Scheduled), utilisées par les traitements en arrière-plan
+ * comme le flush des positions d'agents.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
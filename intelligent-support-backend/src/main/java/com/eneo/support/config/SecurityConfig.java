@@ -24,6 +24,8 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/v1/chat/**", "/api/v1/admin/**", "/api/v1/agent/**", "/ws/**").permitAll() // MODIFICATION: Ajout de /ws/**
+                        // Sonde de santé et collecte Prometheus
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
@@ -38,6 +40,8 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList("http://localhost:5173", "http://localhost:8100"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type"));
+        // Nombre total d'éléments des listes paginées, lisible par le client
+        configuration.setExposedHeaders(Arrays.asList("X-Total-Count"));
         // IMPORTANT: Permettre les 'credentials' pour les futures sessions/cookies si besoin
         configuration.setAllowCredentials(true);
 
@@ -1,30 +1,27 @@
 package com.eneo.support.config;
 
-import io.netty.handler.logging.LogLevel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.netty.http.client.HttpClient;
-import reactor.netty.transport.logging.AdvancedByteBufFormat;
 
 @Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
 public class WebClientConfig {
 
+    /**
+     * Client de l'API Zammad (profil {@code http.clients.zammad}). L'URL de base et le jeton sont fixés ici :
+     * les appels n'indiquent que le modèle de route ({@code /tickets/{ticketId}}), qui sert d'étiquette aux métriques.
+     */
     @Bean
-    public WebClient webClient() {
-        // On configure le client HTTP sous-jacent (Netty) pour activer le logging
-        HttpClient httpClient = HttpClient.create()
-                .wiretap("reactor.netty.http.client.HttpClient", // Nom du logger
-                        LogLevel.INFO, // Niveau de log : on veut voir les infos de base
-                        AdvancedByteBufFormat.TEXTUAL); // Format lisible pour les requêtes/réponses
-
-        // On construit le WebClient en utilisant notre client HTTP configuré
-        return WebClient.builder()
-                .clientConnector(new ReactorClientHttpConnector(httpClient))
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+    public WebClient zammadWebClient(HttpClientProfiles httpClientProfiles,
+                                     @Value("${zammad.api.base-url}") String zammadApiBaseUrl,
+                                     @Value("${zammad.api.token}") String zammadApiToken) {
+        return httpClientProfiles.builder("zammad")
+                .baseUrl(zammadApiBaseUrl)
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Token token=" + zammadApiToken)
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -2,12 +2,26 @@ package com.eneo.support.controller;
 
 import com.eneo.support.dto.*;
 import com.eneo.support.model.Intervention;
-import com.eneo.support.model.Message;
+import com.eneo.support.model.InterventionStatus;
+import com.eneo.support.service.AgentPositionFeed;
 import com.eneo.support.service.AgentService;
+import com.eneo.support.service.ChatWebSocketHandler;
+import com.eneo.support.service.DispatchService;
 import com.eneo.support.service.InterventionService;
+import com.eneo.support.service.RequestTracer;
+import com.eneo.support.service.SlowConsumerPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 /**
@@ -18,12 +32,29 @@ import java.util.List;
 @RequestMapping("/api/v1/admin")
 public class AdminController {
 
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    private static final Duration SSE_HEARTBEAT = Duration.ofSeconds(15);
+
     private final InterventionService interventionService;
     private final AgentService agentService;
+    private final AgentPositionFeed positionFeed;
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final RequestTracer requestTracer;
+    private final DispatchService dispatchService;
+    private final Duration streamMaxDuration;
 
-    public AdminController(InterventionService interventionService, AgentService agentService) {
+    public AdminController(InterventionService interventionService, AgentService agentService,
+                           AgentPositionFeed positionFeed, ChatWebSocketHandler chatWebSocketHandler,
+                           RequestTracer requestTracer, DispatchService dispatchService,
+                           @Value("${agent.feed.stream-max-duration:PT10M}") Duration streamMaxDuration) {
         this.interventionService = interventionService;
         this.agentService = agentService;
+        this.positionFeed = positionFeed;
+        this.chatWebSocketHandler = chatWebSocketHandler;
+        this.requestTracer = requestTracer;
+        this.dispatchService = dispatchService;
+        this.streamMaxDuration = streamMaxDuration;
     }
 
     @GetMapping("/interventions")
@@ -32,10 +63,127 @@ public class AdminController {
         return ResponseEntity.ok(interventions);
     }
 
+    /**
+     * Liste paginée (par curseur) et filtrée des interventions, sous forme de résumés légers.
+     * @param status Filtre optionnel sur le statut.
+     * @param from Date de création minimale (ISO-8601, incluse).
+     * @param to Date de création maximale (ISO-8601, exclue).
+     * @param cursor Valeur {@code nextCursor} de la page précédente.
+     * @param limit Taille de la page (50 par défaut, 200 maximum).
+     */
+    @GetMapping("/interventions/search")
+    public ResponseEntity<CursorPage<InterventionSummaryResponse>> searchInterventions(
+            @RequestParam(required = false) InterventionStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) Double minLat,
+            @RequestParam(required = false) Double maxLat,
+            @RequestParam(required = false) Double minLon,
+            @RequestParam(required = false) Double maxLon,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+
+        if (limit <= 0 || limit > 200) {
+            return ResponseEntity.badRequest().build();
+        }
+        InterventionSearchCriteria criteria = new InterventionSearchCriteria();
+        criteria.setStatus(status);
+        criteria.setFrom(from);
+        criteria.setTo(to);
+        criteria.setMinLatitude(minLat);
+        criteria.setMaxLatitude(maxLat);
+        criteria.setMinLongitude(minLon);
+        criteria.setMaxLongitude(maxLon);
+        try {
+            return ResponseEntity.ok(interventionService.searchInterventions(criteria, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Liste paginée des agents avec leur statut de connexion, calculée depuis la présence Redis.
+     * Le corps reste une liste (compatibilité avec l'interface d'administration) ;
+     * le nombre total d'agents correspondant au filtre est renvoyé dans l'en-tête {@code X-Total-Count}.
+     * @param status Filtre sur le statut : ONLINE, OFFLINE ou ALL (par défaut).
+     * @param page Numéro de page (à partir de 0) ; 400 si le décalage page * size dépasse un int.
+     * @param size Taille de la page (500 par défaut, 1000 maximum).
+     */
     @GetMapping("/agents")
-    public ResponseEntity<List<AgentStatusResponse>> getAllAgents() {
-        List<AgentStatusResponse> allAgents = agentService.getAllAgentsWithStatus();
-        return ResponseEntity.ok(allAgents);
+    public Mono<ResponseEntity<List<AgentStatusResponse>>> getAllAgents(
+            @RequestParam(defaultValue = "ALL") AgentPresenceFilter status,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "500") int size) {
+
+        // Le décalage page * size doit tenir dans un int (offset Redis)
+        if (page < 0 || size <= 0 || size > 1000 || page > Integer.MAX_VALUE / size) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return agentService.getAgentsWithStatus(status, page, size)
+                .map(result -> ResponseEntity.ok()
+                        .header(TOTAL_COUNT_HEADER, String.valueOf(result.getTotal()))
+                        .body(result.getItems()));
+    }
+
+    /**
+     * Trajet d'un agent sur une période (dernières 24 heures par défaut), simplifié côté serveur.
+     * @param from Début de la période (ISO-8601).
+     * @param to Fin de la période (ISO-8601, maintenant par défaut).
+     * @param maxPoints Nombre maximum de points retournés (1000 par défaut).
+     */
+    @GetMapping("/agents/{agentId}/track")
+    public Mono<ResponseEntity<AgentTrackResponse>> getAgentTrack(
+            @PathVariable Long agentId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "1000") int maxPoints) {
+
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(Duration.ofDays(1));
+        if (maxPoints < 2 || maxPoints > 10000 || start.isAfter(end)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return agentService.getAgentTrack(agentId, start, end, maxPoints)
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Retourne les agents les plus proches d'une intervention, calculés depuis l'index spatial en mémoire.
+     * @param k Nombre maximum d'agents retournés (5 par défaut).
+     * @param onlineOnly Si vrai (par défaut), ignore les agents "Hors ligne".
+     */
+    @GetMapping("/interventions/{interventionId}/nearest-agents")
+    public ResponseEntity<List<NearestAgentResponse>> getNearestAgents(
+            @PathVariable Long interventionId,
+            @RequestParam(defaultValue = "5") int k,
+            @RequestParam(defaultValue = "true") boolean onlineOnly) {
+
+        if (k <= 0 || k > 100) {
+            return ResponseEntity.badRequest().build();
+        }
+        return interventionService.getInterventionLocation(interventionId)
+                .map(location -> agentService.findNearestAgents(location.getLatitude(), location.getLongitude(), k, onlineOnly))
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Flux Server-Sent Events des changements de position et de statut des agents,
+     * pour remplacer le rafraîchissement périodique de la carte.
+     * Chaque événement "agents" contient la liste des agents modifiés depuis l'envoi précédent.
+     * Le flux est fermé après {@code agent.feed.stream-max-duration} ; le client (EventSource) se reconnecte.
+     * @param intervalMs Intervalle minimum entre deux événements pour ce client.
+     */
+    @GetMapping(value = "/agents/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<List<AgentPositionDelta>>> streamAgentPositions(
+            @RequestParam(defaultValue = "1000") long intervalMs) {
+
+        Flux<ServerSentEvent<List<AgentPositionDelta>>> deltas = positionFeed.subscribe(Duration.ofMillis(Math.max(0, intervalMs)))
+                .map(batch -> ServerSentEvent.builder(batch).event("agents").build());
+        // Commentaire périodique pour garder la connexion ouverte derrière les proxys
+        Flux<ServerSentEvent<List<AgentPositionDelta>>> heartbeat = Flux.interval(SSE_HEARTBEAT)
+                .map(tick -> ServerSentEvent.<List<AgentPositionDelta>>builder().comment("keep-alive").build());
+        return Flux.merge(deltas, heartbeat).take(streamMaxDuration);
     }
 
     @PutMapping("/interventions/{interventionId}")
@@ -58,9 +206,25 @@ public class AdminController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Historique paginé d'une conversation, des messages les plus récents vers les plus anciens.
+     * @param before Valeur {@code nextCursor} de la page précédente, pour remonter vers les messages plus anciens.
+     * @param limit Taille de la page (200 maximum).
+     */
     @GetMapping("/interventions/{interventionId}/messages")
-    public ResponseEntity<List<Message>> getInterventionMessages(@PathVariable Long interventionId) {
-        return ResponseEntity.ok(interventionService.getMessagesForIntervention(interventionId));
+    public ResponseEntity<CursorPage<MessageResponse>> getInterventionMessages(
+            @PathVariable Long interventionId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit) {
+
+        if (limit <= 0 || limit > 200) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(interventionService.getMessagesPage(interventionId, before, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @PostMapping("/interventions/{interventionId}/messages")
@@ -68,4 +232,67 @@ public class AdminController {
         interventionService.postMessageFromAdmin(interventionId, messageRequest.getContent());
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+
+    @GetMapping("/interventions/{interventionId}/chat/slow-consumer-policy")
+    public ResponseEntity<SlowConsumerPolicy> getChatSlowConsumerPolicy(@PathVariable Long interventionId) {
+        return ResponseEntity.ok(chatWebSocketHandler.getSlowConsumerPolicy(interventionId));
+    }
+
+    /**
+     * Change la politique appliquée aux clients lents du chat de cette intervention (prochaines connexions).
+     */
+    @PutMapping("/interventions/{interventionId}/chat/slow-consumer-policy")
+    public ResponseEntity<SlowConsumerPolicy> setChatSlowConsumerPolicy(
+            @PathVariable Long interventionId,
+            @RequestParam SlowConsumerPolicy policy) {
+
+        chatWebSocketHandler.setSlowConsumerPolicy(interventionId, policy);
+        return ResponseEntity.ok(policy);
+    }
+
+    @DeleteMapping("/interventions/{interventionId}/chat/slow-consumer-policy")
+    public ResponseEntity<Void> resetChatSlowConsumerPolicy(@PathVariable Long interventionId) {
+        chatWebSocketHandler.setSlowConsumerPolicy(interventionId, null);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Traces les plus lentes parmi les plus récentes, avec la durée de chaque étape (Redis, base, Zammad, WebSocket).
+     * @param limit Nombre maximum de traces retournées (20 par défaut).
+     */
+    @GetMapping("/traces/slowest")
+    public ResponseEntity<List<TraceResponse>> getSlowestTraces(@RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > 500) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(requestTracer.slowest(limit));
+    }
+
+    /**
+     * Plan d'affectation en attente d'approbation (204 s'il n'y en a pas).
+     */
+    @GetMapping("/dispatch/proposal")
+    public ResponseEntity<DispatchPlanResponse> getDispatchProposal() {
+        return dispatchService.getProposal()
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.noContent().build());
+    }
+
+    /**
+     * Calcule immédiatement un plan d'affectation des interventions NOUVEAU ; il remplace la proposition en attente.
+     */
+    @PostMapping("/dispatch/proposal")
+    public ResponseEntity<DispatchPlanResponse> computeDispatchProposal() {
+        return ResponseEntity.ok(dispatchService.propose());
+    }
+
+    /**
+     * Approuve et applique la proposition en attente. 409 si elle a été remplacée ou déjà appliquée.
+     */
+    @PostMapping("/dispatch/proposal/{planId}/approve")
+    public ResponseEntity<DispatchApplyResponse> approveDispatchProposal(@PathVariable String planId) {
+        return dispatchService.approve(planId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(HttpStatus.CONFLICT).build());
+    }
+}
@@ -1,15 +1,27 @@
 package com.eneo.support.controller;
 
 import com.eneo.support.dto.AgentLocationRequest;
+import com.eneo.support.dto.LocationBatchResponse;
 import com.eneo.support.model.Intervention;
 import com.eneo.support.service.AgentService;
 import com.eneo.support.service.InterventionService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
 @RestController
 @RequestMapping("/api/v1/agent")
 public class AgentController {
@@ -18,19 +30,49 @@ public class AgentController {
 
     private final AgentService agentService;
     private final InterventionService interventionService;
+    private final ObjectReader locationReader;
 
-    public AgentController(AgentService agentService, InterventionService interventionService) {
+    public AgentController(AgentService agentService, InterventionService interventionService, ObjectMapper objectMapper) {
         this.agentService = agentService;
         this.interventionService = interventionService;
+        this.locationReader = objectMapper.readerFor(AgentLocationRequest.class);
     }
 
     @PostMapping("/location")
     public Mono<ResponseEntity<Void>> updateLocation(@RequestBody AgentLocationRequest locationRequest) {
-        logger.info("Requête reçue sur /api/v1/agent/location pour l'agent ID: {}", locationRequest.getAgentId());
+        logger.info("Position reçue sur /api/v1/agent/location {}", kv("agentId", locationRequest.getAgentId()));
         return agentService.updateAgentLocation(locationRequest)
                 .then(Mono.just(ResponseEntity.ok().build()));
     }
 
+    /**
+     * Endpoint pour rejouer en une seule requête les positions mises en file par l'application mobile.
+     * @param locations Tableau JSON de positions horodatées.
+     * @return Le nombre de positions reçues, écrites et ignorées.
+     */
+    @PostMapping(value = "/location/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<LocationBatchResponse>> updateLocationBatch(@RequestBody List<AgentLocationRequest> locations) {
+        logger.info("Lot de positions reçu sur /api/v1/agent/location/batch {}", kv("count", locations.size()));
+        return agentService.updateAgentLocations(locations.iterator())
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Variante en flux NDJSON (une position JSON par ligne) : les positions sont lues et traitées
+     * au fil de l'eau, sans construire le lot complet en mémoire.
+     */
+    @PostMapping(value = "/location/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ResponseEntity<LocationBatchResponse>> updateLocationStream(InputStream body) {
+        try {
+            MappingIterator<AgentLocationRequest> locations = locationReader.readValues(body);
+            return agentService.updateAgentLocations(locations)
+                    .map(ResponseEntity::ok);
+        } catch (IOException | RuntimeJsonMappingException e) {
+            logger.warn("Flux NDJSON de positions invalide: {}", e.getMessage());
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+    }
+
     /**
      * Endpoint pour qu'un agent marque une intervention comme résolue.
      * @param interventionId L'ID de l'intervention terminée.
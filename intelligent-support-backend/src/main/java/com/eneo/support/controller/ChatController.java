@@ -2,27 +2,49 @@ package com.eneo.support.controller;
 
 import com.eneo.support.dto.ChatMessageRequest;
 import com.eneo.support.dto.ChatMessageResponse;
+import com.eneo.support.dto.WebhookIngestResponse;
+import com.eneo.support.service.AgentReplyWebhookService;
 import com.eneo.support.service.ChatService;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
 /**
  * Le contrôleur REST qui expose notre logique de chat au monde extérieur.
  * C'est la "porte d'entrée" pour les clients utilisant l'application mobile.
- * VERSION CORRIGÉE : L'endpoint obsolète du webhook a été supprimé.
+ * Reçoit aussi, via webhook, les réponses des agents saisies dans Zammad.
  */
 @RestController
 @RequestMapping("/api/v1/chat")
 public class ChatController {
 
+    private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
+
     private final ChatService chatService;
+    private final AgentReplyWebhookService agentReplyWebhookService;
+    private final String webhookToken;
 
-    public ChatController(ChatService chatService) {
+    public ChatController(ChatService chatService,
+                          AgentReplyWebhookService agentReplyWebhookService,
+                          @Value("${zammad.webhook.token:}") String webhookToken) {
         this.chatService = chatService;
+        this.agentReplyWebhookService = agentReplyWebhookService;
+        this.webhookToken = webhookToken;
+        if (webhookToken.isBlank()) {
+            logger.warn("zammad.webhook.token n'est pas défini : le webhook des réponses d'agents refusera tous les appels.");
+        }
     }
 
     /**
@@ -38,10 +60,30 @@ public class ChatController {
                 .defaultIfEmpty(ResponseEntity.badRequest().build()); // Renvoie une erreur 400 si le Mono est vide
     }
 
-    /*
-     * L'endpoint @PostMapping("/webhook/update") a été supprimé car la méthode
-     * chatService.handleAgentReply() n'existe plus dans la nouvelle architecture.
-     * La communication de l'admin se fait maintenant via les endpoints de AdminController
-     * et les WebSockets.
+    /**
+     * Webhook Zammad : réponses des agents à transmettre au client. Accepte un événement ou un tableau d'événements,
+     * au format du déclencheur Zammad ou au format {@link com.eneo.support.dto.AgentMessageRequest}.
+     * Un article déjà reçu est ignoré, ce qui permet à Zammad de rejouer l'appel sans créer de doublon.
+     * Si un ticket n'est pas encore rattaché à son intervention, la réponse est 503 pour que Zammad rejoue l'appel.
+     * L'en-tête {@code X-Webhook-Token} doit reprendre {@code zammad.webhook.token} ; sans jeton configuré,
+     * tous les appels sont refusés (401), l'endpoint étant public.
      */
+    @PostMapping("/webhook/articles")
+    public Mono<ResponseEntity<WebhookIngestResponse>> handleAgentReplies(
+            @RequestHeader(value = "X-Webhook-Token", required = false) String token,
+            @RequestBody JsonNode body) {
+
+        if (webhookToken.isBlank() || token == null
+                || !MessageDigest.isEqual(webhookToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+        }
+        try {
+            return agentReplyWebhookService.ingest(body)
+                    .map(result -> result.getDeferred() > 0
+                            ? ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(result)
+                            : ResponseEntity.ok(result));
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+    }
 }
\ No newline at end of file
@@ -16,4 +16,7 @@ public class AgentLocationRequest implements Serializable { // AJOUT DE "impleme
     private Long agentId;
     private double latitude;
     private double longitude;
+    // Horodatage de la mesure (epoch en millisecondes), optionnel.
+    // Renseigné par l'application mobile lorsqu'elle rejoue des positions mises en file hors couverture.
+    private Long timestamp;
 }
\ No newline at end of file
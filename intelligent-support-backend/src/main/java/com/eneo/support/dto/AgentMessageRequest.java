@@ -5,7 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 /**
- * DTO représentant le message envoyé par un agent via le webhook (n8n).
+ * DTO représentant le message envoyé par un agent via le webhook (Zammad ou n8n).
  */
 @Data
 @NoArgsConstructor // Crée le constructeur vide new ChatMessageResponse()
@@ -13,4 +13,10 @@ import lombok.NoArgsConstructor;
 public class AgentMessageRequest {
     private long ticketId;
     private String message;
+    // Identifiant de l'article Zammad, clé d'idempotence du webhook
+    private Long articleId;
+    // Émetteur de l'article côté Zammad ("Agent", "Customer", "System")
+    private String sender;
+    // Note interne Zammad, jamais transmise au client
+    private boolean internal;
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * DTO poussé à la carte d'administration lorsqu'un agent change de position ou de statut.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AgentPositionDelta {
+    private Long agentId;
+    private double latitude;
+    private double longitude;
+    private Instant lastSeenAt;
+    private String status; // "En ligne" ou "Hors ligne"
+}
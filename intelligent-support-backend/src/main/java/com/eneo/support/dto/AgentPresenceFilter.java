@@ -0,0 +1,10 @@
+package com.eneo.support.dto;
+
+/**
+ * Filtre sur le statut de connexion des agents, utilisé pour la liste paginée de l'administration.
+ */
+public enum AgentPresenceFilter {
+    ONLINE,  // Agents dont la dernière position date de moins du seuil "en ligne"
+    OFFLINE, // Agents non vus depuis plus longtemps (ou jamais vus)
+    ALL
+}
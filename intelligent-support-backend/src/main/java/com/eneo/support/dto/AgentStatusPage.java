@@ -0,0 +1,20 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO représentant une page de la liste des agents avec leur statut de connexion.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AgentStatusPage {
+    private List<AgentStatusResponse> items;
+    private long total; // Nombre total d'agents correspondant au filtre
+    private int page;
+    private int size;
+}
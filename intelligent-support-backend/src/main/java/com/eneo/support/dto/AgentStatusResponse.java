@@ -1,6 +1,7 @@
 package com.eneo.support.dto;
 
 import com.eneo.support.model.Agent;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import java.time.Instant;
 
@@ -8,6 +9,7 @@ import java.time.Instant;
  * DTO pour renvoyer l'état complet d'un agent, y compris son statut de connexion calculé.
  */
 @Data
+@AllArgsConstructor
 public class AgentStatusResponse {
     private Long id;
     private String firstName;
@@ -0,0 +1,19 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Point du trajet d'un agent.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AgentTrackPoint {
+    private double latitude;
+    private double longitude;
+    private Instant recordedAt;
+}
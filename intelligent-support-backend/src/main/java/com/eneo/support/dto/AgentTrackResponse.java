@@ -0,0 +1,23 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Trajet d'un agent sur une période, éventuellement simplifié.
+ * {@code totalPoints} est le nombre de positions enregistrées sur la période, avant simplification.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AgentTrackResponse {
+    private Long agentId;
+    private Instant from;
+    private Instant to;
+    private int totalPoints;
+    private List<AgentTrackPoint> points;
+}
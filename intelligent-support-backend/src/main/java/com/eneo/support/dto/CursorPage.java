@@ -0,0 +1,19 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page de résultats paginés par curseur (keyset).
+ * {@code nextCursor} est opaque pour le client et vaut null lorsqu'il n'y a plus de résultats.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> items;
+    private String nextCursor;
+}
@@ -0,0 +1,19 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Résultat de l'application d'un plan : les interventions déjà affectées (ou résolues) entre-temps sont ignorées.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DispatchApplyResponse {
+    private String planId;
+    private List<DispatchAssignment> applied;
+    private List<Long> skippedInterventionIds;
+}
@@ -0,0 +1,20 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Affectation proposée par le moteur de dispatch : un agent pour une intervention NOUVEAU.
+ * {@code activeInterventions} est la charge de l'agent (interventions ASSIGNE) au moment du calcul.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DispatchAssignment {
+    private Long interventionId;
+    private Long agentId;
+    private double distanceKm;
+    private long activeInterventions;
+    private double cost;
+}
@@ -0,0 +1,27 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Plan d'affectation calculé par le moteur de dispatch, à approuver en un clic via son {@code planId}.
+ * {@code solver} vaut "hungarian" (optimal, petits lots) ou "greedy" (glouton et amélioration locale).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DispatchPlanResponse {
+    private String planId;
+    private Instant computedAt;
+    private String solver;
+    private int interventions;
+    private int agents;
+    private double solveMs;
+    private double totalCost;
+    private List<DispatchAssignment> assignments;
+    private List<Long> unassignedInterventionIds;
+}
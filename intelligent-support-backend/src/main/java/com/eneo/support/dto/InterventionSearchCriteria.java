@@ -0,0 +1,22 @@
+package com.eneo.support.dto;
+
+import com.eneo.support.model.InterventionStatus;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Critères de recherche des interventions. Tous les champs sont optionnels.
+ */
+@Data
+public class InterventionSearchCriteria {
+    private InterventionStatus status;
+    // Intervalle de création [from, to[
+    private Instant from;
+    private Instant to;
+    // Zone géographique (bounding box)
+    private Double minLatitude;
+    private Double maxLatitude;
+    private Double minLongitude;
+    private Double maxLongitude;
+}
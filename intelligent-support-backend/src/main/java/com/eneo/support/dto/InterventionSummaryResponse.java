@@ -0,0 +1,28 @@
+package com.eneo.support.dto;
+
+import com.eneo.support.model.InterventionStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Projection légère d'une intervention pour les listes de l'administration.
+ * Construite directement par la requête JPQL : ni les agents ni les messages ne sont chargés.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InterventionSummaryResponse {
+    private Long id;
+    private Long zammadTicketId;
+    private InterventionStatus status;
+    private String problemDescription; // Tronquée pour l'affichage en liste
+    private double latitude;
+    private double longitude;
+    private Long customerId;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private Integer assignedAgentCount;
+}
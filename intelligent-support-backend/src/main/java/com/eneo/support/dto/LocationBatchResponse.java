@@ -0,0 +1,17 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO résumant le traitement d'un lot de positions envoyé par l'application mobile.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocationBatchResponse {
+    private int received; // Positions reçues dans le lot
+    private int written;  // Positions effectivement enregistrées (la plus récente de chaque agent)
+    private int dropped;  // Positions invalides ou plus anciennes que la dernière position connue
+}
@@ -0,0 +1,23 @@
+package com.eneo.support.dto;
+
+import com.eneo.support.model.SenderType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * DTO d'un message de conversation, construit directement par les requêtes JPQL
+ * (sans charger l'intervention parente).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageResponse {
+    private Long id;
+    private Long interventionId;
+    private String content;
+    private SenderType senderType;
+    private Instant timestamp;
+}
@@ -0,0 +1,22 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * DTO décrivant un agent proche d'une intervention, avec la distance calculée depuis l'index spatial.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearestAgentResponse {
+    private Long agentId;
+    private double latitude;
+    private double longitude;
+    private double distanceKm;
+    private Instant lastSeenAt;
+    private String status; // "En ligne" ou "Hors ligne"
+}
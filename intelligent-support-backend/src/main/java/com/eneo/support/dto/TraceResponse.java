@@ -0,0 +1,22 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Trace d'une requête : durée totale et détail de ses étapes.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TraceResponse {
+    private String traceId;
+    private String name;
+    private Instant startedAt;
+    private double durationMs;
+    private List<TraceSpanResponse> spans;
+}
@@ -0,0 +1,21 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Étape d'une trace. {@code offsetMs} est mesuré depuis le début de la trace ;
+ * {@code durationMs} et {@code outcome} sont absents tant que l'étape n'est pas terminée.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TraceSpanResponse {
+    private int id;
+    private Integer parentId;
+    private String name;
+    private double offsetMs;
+    private Double durationMs;
+    private String outcome;
+}
@@ -0,0 +1,19 @@
+package com.eneo.support.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bilan du traitement d'un appel au webhook des réponses d'agents.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebhookIngestResponse {
+    private int received;
+    private int duplicates;  // Articles déjà traités (rejeu du webhook)
+    private int ignored;     // Notes internes, messages du client, événements sans article pour un ticket inconnu
+    private int persisted;
+    private int deferred;    // Ticket pas encore rattaché à une intervention : article à rejouer
+}
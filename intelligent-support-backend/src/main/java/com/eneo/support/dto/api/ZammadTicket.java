@@ -20,4 +20,7 @@ public class ZammadTicket {
     // Nous les déclarons comme String car c'est le type attendu par Zammad.
     private String latitude;
     private String longitude;
+
+    // Référence de l'intervention d'origine (champ standard "note"), pour retrouver le ticket avant de le recréer
+    private String note;
 }
\ No newline at end of file
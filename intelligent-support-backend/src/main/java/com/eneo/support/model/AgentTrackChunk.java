@@ -0,0 +1,40 @@
+package com.eneo.support.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * Tronçon de l'historique des positions d'un agent : une suite de points consécutifs, encodés en deltas
+ * (voir {@code AgentTracks}). L'historique est en ajout seul ; les tronçons expirés sont purgés en bloc.
+ */
+@Data
+@Entity
+@Table(name = "agent_track_chunks", indexes = {
+        // Tronçons d'un agent sur une période
+        @Index(name = "idx_agent_track_chunks_agent_start", columnList = "agent_id, start_time"),
+        // Purge des tronçons expirés
+        @Index(name = "idx_agent_track_chunks_end", columnList = "end_time")
+})
+public class AgentTrackChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "agent_id", nullable = false)
+    private Long agentId;
+
+    @Column(name = "start_time", nullable = false)
+    private Instant startTime;
+
+    @Column(name = "end_time", nullable = false)
+    private Instant endTime;
+
+    @Column(nullable = false)
+    private int pointCount;
+
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] data;
+}
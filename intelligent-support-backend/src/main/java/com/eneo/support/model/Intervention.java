@@ -18,16 +18,26 @@ import java.util.Set;
  */
 @Data // Annotation Lombok qui remplace getters, setters, toString, equals, hashCode
 @Entity
-@Table(name = "interventions")
+@Table(name = "interventions", indexes = {
+        // Pagination par curseur (keyset) des listes de l'administration
+        @Index(name = "idx_interventions_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_interventions_status_created_at_id", columnList = "status, created_at, id")
+})
 public class Intervention {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true)
+    // Vide tant que le ticket n'a pas été créé (mode de création LOCAL_FIRST)
+    @Column(unique = true)
     private Long zammadTicketId;
 
+    // null pour les interventions antérieures à ce champ, toutes synchronisées
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private ZammadSyncStatus zammadSyncStatus;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private InterventionStatus status;
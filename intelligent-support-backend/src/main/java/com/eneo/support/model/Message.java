@@ -9,11 +9,17 @@ import java.time.Instant;
  * Entité JPA représentant un message unique dans une conversation.
  */
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // Historique paginé par curseur d'une conversation
+        @Index(name = "idx_messages_intervention_timestamp_id", columnList = "intervention_id, timestamp, id")
+})
 public class Message {
 
+    // Identifiants réservés par blocs de 50 (optimiseur "pooled") : contrairement à IDENTITY,
+    // ils sont connus avant l'INSERT, ce qui permet à Hibernate d'écrire les messages en batch JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "messages_seq")
+    @SequenceGenerator(name = "messages_seq", sequenceName = "messages_seq", allocationSize = 50)
     private Long id;
 
     @Column(columnDefinition = "TEXT", nullable = false)
@@ -0,0 +1,12 @@
+package com.eneo.support.model;
+
+/**
+ * Cycle de vie d'une entrée de l'outbox Zammad.
+ */
+public enum OutboxStatus {
+    PENDING,    // En attente d'envoi (ou d'une nouvelle tentative)
+    IN_FLIGHT,  // Réservée par une instance, jusqu'à expiration du bail
+    SENT,       // Acceptée par Zammad
+    SUPERSEDED, // Remplacée par une entrée plus récente pour le même ticket, jamais envoyée
+    FAILED      // Abandonnée après épuisement des tentatives ou refus définitif de Zammad
+}
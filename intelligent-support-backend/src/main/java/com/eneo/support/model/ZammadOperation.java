@@ -0,0 +1,9 @@
+package com.eneo.support.model;
+
+/**
+ * Opérations Zammad différées via la table d'outbox.
+ */
+public enum ZammadOperation {
+    CREATE_TICKET,      // Création du ticket d'une intervention enregistrée localement (payload : ZammadOutbox.TicketCreation)
+    UPDATE_TICKET_STATE // Changement d'état d'un ticket (payload : {"stateId": ...})
+}
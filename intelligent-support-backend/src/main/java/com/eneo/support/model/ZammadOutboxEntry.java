@@ -0,0 +1,61 @@
+package com.eneo.support.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Appel Zammad à effectuer, enregistré dans la même transaction que la modification métier
+ * qui le déclenche, puis envoyé de manière asynchrone par {@code ZammadOutboxDispatcher}.
+ */
+@Data
+@Entity
+@Table(name = "zammad_outbox", indexes = {
+        // Sélection des entrées à envoyer
+        @Index(name = "idx_zammad_outbox_status_next_attempt", columnList = "status, next_attempt_at"),
+        // Regroupement et ordre des opérations d'un même ticket
+        @Index(name = "idx_zammad_outbox_ticket_status", columnList = "zammad_ticket_id, status")
+})
+public class ZammadOutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long interventionId;
+
+    @Column(name = "zammad_ticket_id")
+    private Long zammadTicketId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private ZammadOperation operation;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private OutboxStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    // Fin du bail d'une entrée IN_FLIGHT : passé ce délai, une autre instance peut la reprendre
+    private Instant lockedUntil;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    @CreationTimestamp
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    private Instant updatedAt;
+}
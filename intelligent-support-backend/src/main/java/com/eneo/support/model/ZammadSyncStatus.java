@@ -0,0 +1,10 @@
+package com.eneo.support.model;
+
+/**
+ * Synchronisation d'une intervention avec son ticket Zammad.
+ */
+public enum ZammadSyncStatus {
+    SYNCED,       // Le ticket Zammad existe et zammadTicketId est renseigné
+    PENDING_SYNC, // Intervention enregistrée localement, ticket en cours de création
+    SYNC_FAILED   // La création du ticket a été abandonnée après épuisement des tentatives
+}
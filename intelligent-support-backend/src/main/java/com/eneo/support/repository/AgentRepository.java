@@ -2,11 +2,17 @@ package com.eneo.support.repository;
 
 import com.eneo.support.model.Agent;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 /**
  * Repository pour l'entité Agent.
  */
 @Repository
 public interface AgentRepository extends JpaRepository<Agent, Long> {
+
+    @Query("select a.id from Agent a where a.isAvailable = true")
+    List<Long> findAvailableIds();
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.eneo.support.repository;
+
+import com.eneo.support.model.AgentTrackChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository de l'historique des positions des agents.
+ */
+@Repository
+public interface AgentTrackChunkRepository extends JpaRepository<AgentTrackChunk, Long> {
+
+    /**
+     * Tronçons d'un agent qui recoupent la période [from, to], dans l'ordre chronologique.
+     */
+    @Query("select c from AgentTrackChunk c where c.agentId = :agentId "
+            + "and c.startTime <= :to and c.endTime >= :from order by c.startTime asc, c.id asc")
+    List<AgentTrackChunk> findOverlapping(@Param("agentId") Long agentId,
+                                          @Param("from") Instant from,
+                                          @Param("to") Instant to);
+
+    /**
+     * Doit être appelée dans une transaction.
+     */
+    @Modifying
+    @Query("delete from AgentTrackChunk c where c.endTime < :before")
+    int deleteEndedBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,10 @@
+package com.eneo.support.repository;
+
+/**
+ * Nombre d'interventions en cours (ASSIGNE) d'un agent.
+ */
+public interface AgentWorkload {
+    Long getAgentId();
+
+    long getActiveInterventions();
+}
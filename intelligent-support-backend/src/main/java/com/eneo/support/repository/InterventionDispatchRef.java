@@ -0,0 +1,12 @@
+package com.eneo.support.repository;
+
+/**
+ * Projection minimale d'une intervention à affecter : identifiant et coordonnées.
+ */
+public interface InterventionDispatchRef {
+    Long getId();
+
+    double getLatitude();
+
+    double getLongitude();
+}
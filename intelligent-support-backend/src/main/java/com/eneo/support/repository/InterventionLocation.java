@@ -0,0 +1,11 @@
+package com.eneo.support.repository;
+
+/**
+ * Projection minimale d'une intervention : uniquement ses coordonnées.
+ * Évite de charger l'entité complète (et ses agents EAGER) lorsqu'on n'a besoin que de la position.
+ */
+public interface InterventionLocation {
+    double getLatitude();
+
+    double getLongitude();
+}
@@ -1,13 +1,53 @@
 package com.eneo.support.repository;
 
 import com.eneo.support.model.Intervention;
+import com.eneo.support.model.InterventionStatus;
+import com.eneo.support.model.ZammadSyncStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 /**
  * Repository pour l'entité Intervention.
  * Fournit les opérations CRUD (Create, Read, Update, Delete) pour les interventions.
  */
 @Repository
-public interface InterventionRepository extends JpaRepository<Intervention, Long> {
-}
\ No newline at end of file
+public interface InterventionRepository extends JpaRepository<Intervention, Long>, InterventionRepositoryCustom {
+
+    @Query("select i.latitude as latitude, i.longitude as longitude from Intervention i where i.id = :id")
+    Optional<InterventionLocation> findLocationById(@Param("id") Long id);
+
+    /**
+     * Interventions des tickets Zammad donnés (via l'index unique sur zammad_ticket_id), sans charger les entités.
+     */
+    @Query("select i.id as id, i.zammadTicketId as zammadTicketId from Intervention i where i.zammadTicketId in :ticketIds")
+    List<InterventionTicketRef> findTicketRefsByZammadTicketIdIn(@Param("ticketIds") Collection<Long> ticketIds);
+
+    @Query("select i.zammadTicketId from Intervention i where i.id = :id")
+    Optional<Long> findZammadTicketIdById(@Param("id") Long id);
+
+    /**
+     * Interventions d'un statut, les plus anciennes d'abord, sans charger les entités (ni leurs agents EAGER).
+     */
+    @Query("select i.id as id, i.latitude as latitude, i.longitude as longitude from Intervention i "
+            + "where i.status = :status order by i.createdAt asc, i.id asc")
+    List<InterventionDispatchRef> findDispatchRefsByStatus(@Param("status") InterventionStatus status, Limit limit);
+
+    /**
+     * Nombre d'interventions d'un statut par agent affecté, calculé en base (table de jointure intervention_agents).
+     */
+    @Query("select a.id as agentId, count(i) as activeInterventions from Intervention i join i.assignedAgents a "
+            + "where i.status = :status group by a.id")
+    List<AgentWorkload> countByAssignedAgent(@Param("status") InterventionStatus status);
+
+    @Modifying
+    @Query("update Intervention i set i.zammadSyncStatus = :status where i.id in :ids")
+    int updateZammadSyncStatus(@Param("ids") Collection<Long> ids, @Param("status") ZammadSyncStatus status);
+}
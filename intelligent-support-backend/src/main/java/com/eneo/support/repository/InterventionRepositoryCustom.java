@@ -0,0 +1,21 @@
+package com.eneo.support.repository;
+
+import com.eneo.support.dto.InterventionSearchCriteria;
+import com.eneo.support.dto.InterventionSummaryResponse;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Requêtes dynamiques sur les interventions, implémentées avec l'API Criteria.
+ */
+public interface InterventionRepositoryCustom {
+
+    /**
+     * Recherche paginée par curseur sur (createdAt, id), du plus récent au plus ancien.
+     * @param afterCreatedAt createdAt du dernier élément de la page précédente (null pour la première page).
+     * @param afterId id du dernier élément de la page précédente.
+     */
+    List<InterventionSummaryResponse> searchSummaries(InterventionSearchCriteria criteria,
+                                                      Instant afterCreatedAt, Long afterId, int limit);
+}
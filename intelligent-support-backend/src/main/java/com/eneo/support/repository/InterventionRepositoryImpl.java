@@ -0,0 +1,87 @@
+package com.eneo.support.repository;
+
+import com.eneo.support.dto.InterventionSearchCriteria;
+import com.eneo.support.dto.InterventionSummaryResponse;
+import com.eneo.support.model.Intervention;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implémentation de {@link InterventionRepositoryCustom}.
+ * Seuls les critères renseignés sont ajoutés à la requête, ce qui permet à PostgreSQL
+ * d'utiliser les index sur (created_at, id) et (status, created_at, id).
+ */
+public class InterventionRepositoryImpl implements InterventionRepositoryCustom {
+
+    private static final int DESCRIPTION_PREVIEW_LENGTH = 200;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<InterventionSummaryResponse> searchSummaries(InterventionSearchCriteria criteria,
+                                                             Instant afterCreatedAt, Long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<InterventionSummaryResponse> query = cb.createQuery(InterventionSummaryResponse.class);
+        Root<Intervention> intervention = query.from(Intervention.class);
+        Path<Instant> createdAt = intervention.get("createdAt");
+        Path<Long> id = intervention.get("id");
+
+        query.select(cb.construct(InterventionSummaryResponse.class,
+                id,
+                intervention.get("zammadTicketId"),
+                intervention.get("status"),
+                cb.substring(intervention.get("problemDescription"), 1, DESCRIPTION_PREVIEW_LENGTH),
+                intervention.get("latitude"),
+                intervention.get("longitude"),
+                intervention.get("customerId"),
+                createdAt,
+                intervention.get("updatedAt"),
+                cb.size(intervention.get("assignedAgents"))));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (criteria.getStatus() != null) {
+            predicates.add(cb.equal(intervention.get("status"), criteria.getStatus()));
+        }
+        if (criteria.getFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(createdAt, criteria.getFrom()));
+        }
+        if (criteria.getTo() != null) {
+            predicates.add(cb.lessThan(createdAt, criteria.getTo()));
+        }
+        if (criteria.getMinLatitude() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(intervention.get("latitude"), criteria.getMinLatitude()));
+        }
+        if (criteria.getMaxLatitude() != null) {
+            predicates.add(cb.lessThanOrEqualTo(intervention.get("latitude"), criteria.getMaxLatitude()));
+        }
+        if (criteria.getMinLongitude() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(intervention.get("longitude"), criteria.getMinLongitude()));
+        }
+        if (criteria.getMaxLongitude() != null) {
+            predicates.add(cb.lessThanOrEqualTo(intervention.get("longitude"), criteria.getMaxLongitude()));
+        }
+        if (afterCreatedAt != null && afterId != null) {
+            // (createdAt, id) < (afterCreatedAt, afterId)
+            predicates.add(cb.or(
+                    cb.lessThan(createdAt, afterCreatedAt),
+                    cb.and(cb.equal(createdAt, afterCreatedAt), cb.lessThan(id, afterId))));
+        }
+
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(cb.desc(createdAt), cb.desc(id));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
@@ -0,0 +1,10 @@
+package com.eneo.support.repository;
+
+/**
+ * Projection minimale associant un ticket Zammad à son intervention.
+ */
+public interface InterventionTicketRef {
+    Long getId();
+
+    Long getZammadTicketId();
+}
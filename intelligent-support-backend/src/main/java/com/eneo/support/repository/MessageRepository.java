@@ -1,12 +1,39 @@
 package com.eneo.support.repository;
 
+import com.eneo.support.dto.MessageResponse;
 import com.eneo.support.model.Message;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.List;
+
 /**
  * Repository pour l'entité Message.
  */
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
-}
\ No newline at end of file
+
+    /**
+     * Messages les plus récents d'une intervention (première page), du plus récent au plus ancien.
+     */
+    @Query("select new com.eneo.support.dto.MessageResponse(m.id, m.intervention.id, m.content, m.senderType, m.timestamp) "
+            + "from Message m where m.intervention.id = :interventionId "
+            + "order by m.timestamp desc, m.id desc")
+    List<MessageResponse> findLatest(@Param("interventionId") Long interventionId, Limit limit);
+
+    /**
+     * Messages strictement antérieurs au curseur (timestamp, id), du plus récent au plus ancien.
+     */
+    @Query("select new com.eneo.support.dto.MessageResponse(m.id, m.intervention.id, m.content, m.senderType, m.timestamp) "
+            + "from Message m where m.intervention.id = :interventionId "
+            + "and (m.timestamp < :beforeTimestamp or (m.timestamp = :beforeTimestamp and m.id < :beforeId)) "
+            + "order by m.timestamp desc, m.id desc")
+    List<MessageResponse> findBefore(@Param("interventionId") Long interventionId,
+                                     @Param("beforeTimestamp") Instant beforeTimestamp,
+                                     @Param("beforeId") Long beforeId,
+                                     Limit limit);
+}
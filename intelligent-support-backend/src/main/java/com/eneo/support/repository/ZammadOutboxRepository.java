@@ -0,0 +1,91 @@
+package com.eneo.support.repository;
+
+import com.eneo.support.model.OutboxStatus;
+import com.eneo.support.model.ZammadOutboxEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository de l'outbox Zammad.
+ */
+@Repository
+public interface ZammadOutboxRepository extends JpaRepository<ZammadOutboxEntry, Long> {
+
+    /**
+     * Verrouille la dernière entrée PENDING de la même opération sur la même intervention, à réutiliser plutôt
+     * que d'en créer une autre. Une entrée verrouillée par le dispatcher (en cours de réservation) est ignorée :
+     * l'appelant crée alors une nouvelle entrée.
+     * Doit être appelée dans une transaction.
+     */
+    @Query(value = """
+            SELECT o.* FROM zammad_outbox o
+            WHERE o.intervention_id = :interventionId AND o.operation = :operation AND o.status = 'PENDING'
+            ORDER BY o.id DESC
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    Optional<ZammadOutboxEntry> lockLatestPending(@Param("interventionId") Long interventionId,
+                                                  @Param("operation") String operation);
+
+    /**
+     * Verrouille les prochaines entrées à envoyer. {@code SKIP LOCKED} permet à plusieurs instances de se partager
+     * l'outbox sans s'attendre ; les interventions (ou tickets) ayant déjà un envoi en cours sont écartées
+     * pour préserver l'ordre des opérations.
+     * Doit être appelée dans une transaction.
+     */
+    @Query(value = """
+            SELECT o.* FROM zammad_outbox o
+            WHERE (o.status = 'PENDING' OR (o.status = 'IN_FLIGHT' AND o.locked_until < :now))
+              AND o.next_attempt_at <= :now
+              AND NOT EXISTS (SELECT 1 FROM zammad_outbox f
+                              WHERE (f.intervention_id = o.intervention_id OR f.zammad_ticket_id = o.zammad_ticket_id)
+                                AND f.status = 'IN_FLIGHT' AND f.locked_until >= :now)
+            ORDER BY o.id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<ZammadOutboxEntry> lockDueEntries(@Param("now") Instant now, @Param("limit") int limit);
+
+    /**
+     * Conserve le ticket créé par une entrée {@code CREATE_TICKET} dès la réponse de Zammad, pour qu'une
+     * nouvelle tentative le relise sans dépendre de la recherche. Doit être appelée dans une transaction.
+     */
+    @Modifying
+    @Query("UPDATE ZammadOutboxEntry o SET o.zammadTicketId = :zammadTicketId WHERE o.id = :id AND o.zammadTicketId IS NULL")
+    int recordCreatedTicket(@Param("id") Long id, @Param("zammadTicketId") Long zammadTicketId);
+
+    /**
+     * Enregistre le résultat d'un envoi, seulement si l'entrée est toujours réservée par ce dispatcher
+     * (même bail) : une réservation reprise par une autre instance n'est pas écrasée.
+     * Doit être appelée dans une transaction.
+     * @return 0 si l'entrée n'est plus réservée par ce dispatcher.
+     */
+    @Modifying
+    @Query("""
+            UPDATE ZammadOutboxEntry o SET o.status = :status, o.attempts = :attempts, o.nextAttemptAt = :nextAttemptAt,
+                o.lockedUntil = NULL, o.lastError = :lastError, o.zammadTicketId = COALESCE(:zammadTicketId, o.zammadTicketId), o.updatedAt = :now
+            WHERE o.id = :id AND o.status = com.eneo.support.model.OutboxStatus.IN_FLIGHT AND o.lockedUntil = :lease
+            """)
+    int completeDelivery(@Param("id") Long id,
+                         @Param("lease") Instant lease,
+                         @Param("status") OutboxStatus status,
+                         @Param("attempts") int attempts,
+                         @Param("nextAttemptAt") Instant nextAttemptAt,
+                         @Param("lastError") String lastError,
+                         @Param("zammadTicketId") Long zammadTicketId,
+                         @Param("now") Instant now);
+
+    long countByStatus(OutboxStatus status);
+
+    @Modifying
+    @Query("DELETE FROM ZammadOutboxEntry o WHERE o.status IN :statuses AND o.updatedAt < :before")
+    int deleteByStatusInAndUpdatedAtBefore(@Param("statuses") Collection<OutboxStatus> statuses, @Param("before") Instant before);
+}
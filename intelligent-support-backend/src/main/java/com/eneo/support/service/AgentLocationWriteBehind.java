@@ -0,0 +1,171 @@
+package com.eneo.support.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tampon "write-behind" pour la persistance des positions d'agents.
+ * Chaque ping écrase simplement la position en attente de l'agent dans une map concurrente ;
+ * un flush périodique écrit ensuite toutes les dernières positions dans la table {@code agents}
+ * avec un seul UPDATE JDBC en batch, au lieu d'un findById + save par ping.
+ */
+@Component
+public class AgentLocationWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentLocationWriteBehind.class);
+
+    private static final String UPDATE_SQL =
+            "UPDATE agents SET last_latitude = ?, last_longitude = ?, last_seen_at = ? WHERE id = ?";
+    // Cas rare : l'agent n'existe pas encore en base, on le crée à la volée comme auparavant.
+    private static final String INSERT_SQL =
+            "INSERT INTO agents (id, first_name, last_name, is_available, last_latitude, last_longitude, last_seen_at) "
+                    + "VALUES (?, 'Agent', ?, false, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+
+    /**
+     * Dernière position connue d'un agent, en attente d'écriture.
+     * {@code firstEnqueuedNanos} date la plus ancienne mise à jour non persistée (mesure du retard).
+     */
+    record PendingLocation(long agentId, double latitude, double longitude, Instant seenAt, long firstEnqueuedNanos) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxBatchSize;
+    private final Map<Long, PendingLocation> pending = new ConcurrentHashMap<>();
+
+    private final DistributionSummary flushSize;
+    private final Timer flushLag;
+    private final Timer flushDuration;
+    private final Counter flushFailures;
+
+    public AgentLocationWriteBehind(JdbcTemplate jdbcTemplate,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${agent.location.write-behind.max-batch-size:1000}") int maxBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxBatchSize = maxBatchSize;
+        this.flushSize = DistributionSummary.builder("agent.location.flush.size")
+                .description("Nombre de positions écrites par flush")
+                .register(meterRegistry);
+        this.flushLag = Timer.builder("agent.location.flush.lag")
+                .description("Âge de la plus ancienne position non persistée au moment du flush")
+                .register(meterRegistry);
+        this.flushDuration = Timer.builder("agent.location.flush.duration")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("agent.location.flush.failures")
+                .register(meterRegistry);
+        meterRegistry.gauge("agent.location.pending", pending, Map::size);
+    }
+
+    /**
+     * Enregistre la dernière position d'un agent. Une position plus ancienne que celle déjà en attente est ignorée.
+     */
+    public void enqueue(long agentId, double latitude, double longitude, Instant seenAt) {
+        PendingLocation update = new PendingLocation(agentId, latitude, longitude, seenAt, System.nanoTime());
+        pending.merge(agentId, update, AgentLocationWriteBehind::coalesce);
+    }
+
+    private static PendingLocation coalesce(PendingLocation current, PendingLocation update) {
+        if (update.seenAt().isBefore(current.seenAt())) {
+            return current;
+        }
+        return new PendingLocation(update.agentId(), update.latitude(), update.longitude(), update.seenAt(),
+                Math.min(current.firstEnqueuedNanos(), update.firstEnqueuedNanos()));
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    @Scheduled(fixedDelayString = "${agent.location.write-behind.flush-interval-ms:2000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<PendingLocation> batch = drain();
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long oldest = batch.stream().mapToLong(PendingLocation::firstEnqueuedNanos).min().orElse(now);
+        flushLag.record(now - oldest, TimeUnit.NANOSECONDS);
+
+        try {
+            flushDuration.record(() -> write(batch));
+            flushSize.record(batch.size());
+            logger.debug("{} positions d'agents persistées en base de données.", batch.size());
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            logger.error("Échec du flush de {} positions d'agents, nouvel essai au prochain cycle.", batch.size(), e);
+            // On remet les positions en attente sans écraser celles arrivées entre-temps
+            batch.forEach(location -> pending.merge(location.agentId(), location, AgentLocationWriteBehind::coalesce));
+        }
+    }
+
+    private List<PendingLocation> drain() {
+        List<PendingLocation> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+        for (Long agentId : pending.keySet()) {
+            PendingLocation location = pending.remove(agentId);
+            if (location != null) {
+                batch.add(location);
+            }
+        }
+        return batch;
+    }
+
+    private void write(List<PendingLocation> batch) {
+        List<PendingLocation> missing = new ArrayList<>();
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, batch, maxBatchSize, (ps, location) -> {
+            ps.setDouble(1, location.latitude());
+            ps.setDouble(2, location.longitude());
+            ps.setTimestamp(3, Timestamp.from(location.seenAt()));
+            ps.setLong(4, location.agentId());
+        });
+
+        int index = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                if (count == 0) {
+                    missing.add(batch.get(index));
+                }
+                index++;
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            logger.warn("{} agents introuvables en base de données, création à la volée.", missing.size());
+            jdbcTemplate.batchUpdate(INSERT_SQL, missing, maxBatchSize, (ps, location) -> {
+                ps.setLong(1, location.agentId());
+                ps.setString(2, String.valueOf(location.agentId()));
+                ps.setDouble(3, location.latitude());
+                ps.setDouble(4, location.longitude());
+                ps.setTimestamp(5, Timestamp.from(location.seenAt()));
+            });
+        }
+    }
+
+    /**
+     * Dernier flush à l'arrêt de l'application pour ne perdre aucune position en attente.
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        logger.info("Arrêt : flush de {} positions d'agents en attente.", pending.size());
+        flush();
+    }
+}
@@ -0,0 +1,146 @@
+package com.eneo.support.service;
+
+import com.eneo.support.dto.AgentPositionDelta;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flux temps réel des changements de position et de statut des agents, destiné à la carte d'administration.
+ * Les positions reçues sont regroupées par agent (seule la dernière est conservée) puis diffusées
+ * par lots à chaque fenêtre {@code agent.feed.conflation-window}. L'enregistrement d'une position
+ * se limite à une écriture dans une map : un tableau de bord lent ne ralentit jamais l'ingestion.
+ */
+@Component
+public class AgentPositionFeed {
+
+    private static final String STATUS_ONLINE = "En ligne";
+    private static final String STATUS_OFFLINE = "Hors ligne";
+
+    private final Duration conflationWindow;
+    private final Duration onlineThreshold;
+    private final int maxPendingBatches;
+
+    private final Map<Long, AgentPositionDelta> pending = new ConcurrentHashMap<>();
+    // Agents annoncés "En ligne", pour détecter leur passage "Hors ligne" sans nouveau ping
+    private final Map<Long, AgentPositionDelta> online = new ConcurrentHashMap<>();
+    private final Sinks.Many<List<AgentPositionDelta>> sink = Sinks.many().multicast().directBestEffort();
+    private final Counter droppedBatches;
+    private final MeterRegistry meterRegistry;
+    private Disposable ticker;
+
+    public AgentPositionFeed(MeterRegistry meterRegistry,
+                             @Value("${agent.feed.conflation-window:PT0.5S}") Duration conflationWindow,
+                             @Value("${agent.feed.max-pending-batches:32}") int maxPendingBatches,
+                             @Value("${agent.online-threshold:PT5M}") Duration onlineThreshold) {
+        this.conflationWindow = conflationWindow;
+        this.maxPendingBatches = maxPendingBatches;
+        this.onlineThreshold = onlineThreshold;
+        this.meterRegistry = meterRegistry;
+        this.droppedBatches = Counter.builder("agent.feed.dropped.batches")
+                .description("Lots de positions abandonnés pour des clients trop lents")
+                .register(meterRegistry);
+        meterRegistry.gauge("agent.feed.subscribers", sink, Sinks.Many::currentSubscriberCount);
+    }
+
+    @PostConstruct
+    void start() {
+        // Un seul thread émet dans le sink : pas d'émissions concurrentes à gérer
+        ticker = Flux.interval(conflationWindow, Schedulers.newSingle("agent-feed"))
+                .subscribe(tick -> emitPending());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (ticker != null) {
+            ticker.dispose();
+        }
+        sink.tryEmitComplete();
+    }
+
+    /**
+     * Enregistre la dernière position d'un agent ; elle sera diffusée à la prochaine fenêtre.
+     */
+    public void publish(long agentId, double latitude, double longitude, Instant seenAt) {
+        String status = seenAt.isAfter(Instant.now().minus(onlineThreshold)) ? STATUS_ONLINE : STATUS_OFFLINE;
+        pending.put(agentId, new AgentPositionDelta(agentId, latitude, longitude, seenAt, status));
+    }
+
+    void emitPending() {
+        List<AgentPositionDelta> batch = new ArrayList<>();
+        for (Long agentId : pending.keySet()) {
+            AgentPositionDelta delta = pending.remove(agentId);
+            if (delta == null) {
+                continue;
+            }
+            batch.add(delta);
+            if (STATUS_ONLINE.equals(delta.getStatus())) {
+                online.put(agentId, delta);
+            } else {
+                online.remove(agentId);
+            }
+        }
+
+        Instant offlineBefore = Instant.now().minus(onlineThreshold);
+        for (Iterator<AgentPositionDelta> it = online.values().iterator(); it.hasNext(); ) {
+            AgentPositionDelta delta = it.next();
+            if (delta.getLastSeenAt().isBefore(offlineBefore)) {
+                it.remove();
+                batch.add(new AgentPositionDelta(delta.getAgentId(), delta.getLatitude(), delta.getLongitude(),
+                        delta.getLastSeenAt(), STATUS_OFFLINE));
+            }
+        }
+
+        if (!batch.isEmpty() && sink.currentSubscriberCount() > 0) {
+            Sinks.EmitResult result = sink.tryEmitNext(batch);
+            if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+                Counter.builder("agent.feed.emit.failures")
+                        .description("Lots de positions non diffusés à la carte d'administration")
+                        .tag("result", result.name())
+                        .register(meterRegistry)
+                        .increment();
+            }
+        }
+    }
+
+    /**
+     * Abonnement d'un client. Les lots sont fusionnés par agent sur {@code minInterval}
+     * (jamais moins que la fenêtre de regroupement), ce qui plafonne le débit envoyé au client.
+     * Si le client ne suit pas, les lots les plus anciens en attente sont abandonnés.
+     */
+    public Flux<List<AgentPositionDelta>> subscribe(Duration minInterval) {
+        Flux<List<AgentPositionDelta>> deltas = sink.asFlux();
+        if (minInterval.compareTo(conflationWindow) > 0) {
+            deltas = deltas.buffer(minInterval)
+                    .map(AgentPositionFeed::mergeLatest)
+                    .filter(batch -> !batch.isEmpty());
+        }
+        return deltas
+                .onBackpressureBuffer(maxPendingBatches, dropped -> droppedBatches.increment(), BufferOverflowStrategy.DROP_OLDEST)
+                // L'écriture vers un client lent bloque son propre thread, jamais celui du ticker
+                .publishOn(Schedulers.boundedElastic(), 1);
+    }
+
+    private static List<AgentPositionDelta> mergeLatest(List<List<AgentPositionDelta>> batches) {
+        Map<Long, AgentPositionDelta> latest = new LinkedHashMap<>();
+        batches.forEach(batch -> batch.forEach(delta -> latest.put(delta.getAgentId(), delta)));
+        return new ArrayList<>(latest.values());
+    }
+}
@@ -0,0 +1,261 @@
+package com.eneo.support.service;
+
+import com.eneo.support.dto.AgentMessageRequest;
+import com.eneo.support.dto.WebhookIngestResponse;
+import com.eneo.support.model.Message;
+import com.eneo.support.model.SenderType;
+import com.eneo.support.repository.InterventionRepository;
+import com.eneo.support.repository.InterventionTicketRef;
+import com.eneo.support.repository.MessageRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Intègre les réponses des agents saisies dans Zammad (webhook) dans la conversation du client.
+ * Un appel peut contenir un ou plusieurs articles, au format du déclencheur Zammad ({@code {"ticket":…, "article":…}})
+ * ou au format simplifié {@link AgentMessageRequest}. Zammad pouvant rejouer un webhook, chaque article n'est intégré
+ * qu'une fois : son identifiant est marqué dans un bitmap Redis (un bit par article). Les messages du lot sont
+ * enregistrés dans une seule transaction puis diffusés sur le chat.
+ */
+@Service
+public class AgentReplyWebhookService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentReplyWebhookService.class);
+
+    // Bitmap des articles déjà traités, découpé en segments de 2^20 bits (128 Kio) : zammad:webhook:articles:<id / 2^20>
+    private static final String SEEN_KEY_PREFIX = "zammad:webhook:articles:";
+    private static final int SEGMENT_BITS = 20;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    // KEYS = segments, ARGV = [ttl, valeur du bit, puis un offset par clé] ; retourne l'ancienne valeur de chaque bit
+    private static final RedisScript<List> SET_BITS_SCRIPT = RedisScript.of(
+            "local previous = {} "
+                    + "for i = 1, #KEYS do "
+                    + "previous[i] = redis.call('SETBIT', KEYS[i], ARGV[i + 2], ARGV[2]) "
+                    + "redis.call('EXPIRE', KEYS[i], ARGV[1]) "
+                    + "end "
+                    + "return previous",
+            List.class);
+
+    private static final String AGENT_SENDER = "Agent";
+
+    /**
+     * Résultat d'un lot : messages enregistrés et articles écartés faute d'intervention pour leur ticket.
+     */
+    private record Persisted(int count, List<Long> unresolvedArticleIds) {
+    }
+
+    private final InterventionRepository interventionRepository;
+    private final MessageRepository messageRepository;
+    private final ChatWebSocketHandler webSocketHandler;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Scheduler persistenceScheduler;
+    private final Duration idempotencyTtl;
+
+    // Index ticket Zammad -> intervention ; l'association ne change jamais une fois créée
+    private final Cache<Long, Long> interventionByTicket;
+
+    public AgentReplyWebhookService(InterventionRepository interventionRepository,
+                                    MessageRepository messageRepository,
+                                    ChatWebSocketHandler webSocketHandler,
+                                    ReactiveStringRedisTemplate redisTemplate,
+                                    ObjectMapper objectMapper,
+                                    PlatformTransactionManager transactionManager,
+                                    Scheduler persistenceScheduler,
+                                    @Value("${zammad.webhook.idempotency-ttl:P30D}") Duration idempotencyTtl,
+                                    @Value("${zammad.webhook.ticket-cache-size:50000}") long ticketCacheSize) {
+        this.interventionRepository = interventionRepository;
+        this.messageRepository = messageRepository;
+        this.webSocketHandler = webSocketHandler;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.persistenceScheduler = persistenceScheduler;
+        this.idempotencyTtl = idempotencyTtl;
+        this.interventionByTicket = Caffeine.newBuilder()
+                .maximumSize(ticketCacheSize)
+                .build();
+    }
+
+    /**
+     * Traite le corps d'un appel au webhook : un événement ou un tableau d'événements.
+     * @throws IllegalArgumentException si un événement ne peut pas être interprété.
+     */
+    public Mono<WebhookIngestResponse> ingest(JsonNode body) {
+        List<AgentMessageRequest> events = new ArrayList<>();
+        if (body.isArray()) {
+            body.forEach(node -> events.add(toRequest(node)));
+        } else {
+            events.add(toRequest(body));
+        }
+
+        // Seuls les messages publics des agents sont destinés au client ; on dédoublonne aussi au sein du lot
+        Map<Long, AgentMessageRequest> candidates = new LinkedHashMap<>();
+        List<AgentMessageRequest> withoutArticleId = new ArrayList<>();
+        int ignored = 0;
+        for (AgentMessageRequest event : events) {
+            if (event.isInternal() || (event.getSender() != null && !AGENT_SENDER.equalsIgnoreCase(event.getSender()))
+                    || event.getMessage() == null || event.getMessage().isBlank()) {
+                ignored++;
+            } else if (event.getArticleId() == null) {
+                withoutArticleId.add(event);
+            } else {
+                candidates.putIfAbsent(event.getArticleId(), event);
+            }
+        }
+        int received = events.size();
+        int duplicatesInBatch = received - ignored - withoutArticleId.size() - candidates.size();
+        int finalIgnored = ignored;
+
+        return markSeen(new ArrayList<>(candidates.keySet()))
+                .flatMap(newArticleIds -> {
+                    List<AgentMessageRequest> accepted = new ArrayList<>(withoutArticleId);
+                    newArticleIds.forEach(id -> accepted.add(candidates.get(id)));
+                    int duplicates = duplicatesInBatch + candidates.size() - newArticleIds.size();
+
+                    return Mono.fromCallable(() -> persistAndBroadcast(accepted))
+                            .subscribeOn(persistenceScheduler)
+                            // Ticket pas encore rattaché à son intervention (création LOCAL_FIRST en cours) :
+                            // les articles écartés sont libérés pour qu'un rejeu de Zammad les intègre
+                            .flatMap(persisted -> setBits(persisted.unresolvedArticleIds(), false)
+                                    .thenReturn(new WebhookIngestResponse(received, duplicates,
+                                            finalIgnored + accepted.size() - persisted.count() - persisted.unresolvedArticleIds().size(),
+                                            persisted.count(), persisted.unresolvedArticleIds().size())))
+                            // En cas d'échec, on libère les articles pour que le rejeu de Zammad les intègre
+                            .onErrorResume(error -> setBits(newArticleIds, false).then(Mono.error(error)));
+                });
+    }
+
+    private Persisted persistAndBroadcast(List<AgentMessageRequest> accepted) {
+        if (accepted.isEmpty()) {
+            return new Persisted(0, List.of());
+        }
+        Map<Long, Long> interventionIds = resolveInterventions(accepted);
+        List<Long> unresolvedArticleIds = new ArrayList<>();
+
+        List<Message> saved = transactionTemplate.execute(status -> {
+            List<Message> messages = new ArrayList<>(accepted.size());
+            for (AgentMessageRequest event : accepted) {
+                Long interventionId = interventionIds.get(event.getTicketId());
+                if (interventionId == null) {
+                    if (event.getArticleId() != null) {
+                        logger.warn("Réponse d'agent différée : aucune intervention pour le ticket Zammad {}", event.getTicketId());
+                        unresolvedArticleIds.add(event.getArticleId());
+                    } else {
+                        logger.warn("Réponse d'agent ignorée : aucune intervention pour le ticket Zammad {}", event.getTicketId());
+                    }
+                    continue;
+                }
+                Message message = new Message();
+                message.setContent(event.getMessage());
+                message.setSenderType(SenderType.ADMIN);
+                message.setIntervention(interventionRepository.getReferenceById(interventionId));
+                messages.add(message);
+            }
+            return messageRepository.saveAll(messages);
+        });
+
+        for (Message message : saved) {
+            webSocketHandler.sendMessage(message.getIntervention().getId(), message);
+        }
+        logger.info("{} réponse(s) d'agent Zammad intégrée(s) au chat", saved.size());
+        return new Persisted(saved.size(), unresolvedArticleIds);
+    }
+
+    /**
+     * Résout les interventions des tickets du lot : cache local, puis une seule requête pour les tickets manquants.
+     */
+    private Map<Long, Long> resolveInterventions(List<AgentMessageRequest> events) {
+        Set<Long> ticketIds = new HashSet<>();
+        events.forEach(event -> ticketIds.add(event.getTicketId()));
+
+        Map<Long, Long> resolved = new LinkedHashMap<>(interventionByTicket.getAllPresent(ticketIds));
+        ticketIds.removeAll(resolved.keySet());
+        if (!ticketIds.isEmpty()) {
+            for (InterventionTicketRef ref : interventionRepository.findTicketRefsByZammadTicketIdIn(ticketIds)) {
+                resolved.put(ref.getZammadTicketId(), ref.getId());
+                interventionByTicket.put(ref.getZammadTicketId(), ref.getId());
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Marque les articles comme traités.
+     * @return les articles qui ne l'étaient pas encore.
+     */
+    private Mono<List<Long>> markSeen(List<Long> articleIds) {
+        return setBits(articleIds, true).map(previous -> {
+            List<Long> fresh = new ArrayList<>();
+            for (int i = 0; i < articleIds.size(); i++) {
+                if (((Number) previous.get(i)).longValue() == 0) {
+                    fresh.add(articleIds.get(i));
+                }
+            }
+            return fresh;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<List<Object>> setBits(List<Long> articleIds, boolean value) {
+        if (articleIds.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        List<String> keys = new ArrayList<>(articleIds.size());
+        List<String> args = new ArrayList<>(articleIds.size() + 2);
+        args.add(String.valueOf(idempotencyTtl.toSeconds()));
+        args.add(value ? "1" : "0");
+        for (Long articleId : articleIds) {
+            keys.add(SEEN_KEY_PREFIX + (articleId >>> SEGMENT_BITS));
+            args.add(String.valueOf(articleId & SEGMENT_MASK));
+        }
+        return redisTemplate.execute(SET_BITS_SCRIPT, keys, args)
+                .next()
+                .map(result -> (List<Object>) result);
+    }
+
+    private AgentMessageRequest toRequest(JsonNode node) {
+        if (!node.has("article")) {
+            try {
+                return objectMapper.treeToValue(node, AgentMessageRequest.class);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Événement de webhook illisible", e);
+            }
+        }
+        // Format du déclencheur Zammad
+        JsonNode article = node.get("article");
+        long ticketId = article.hasNonNull("ticket_id") ? article.get("ticket_id").asLong() : node.path("ticket").path("id").asLong();
+        if (ticketId == 0 || !article.hasNonNull("id")) {
+            throw new IllegalArgumentException("Événement Zammad sans ticket ou sans identifiant d'article");
+        }
+        AgentMessageRequest request = new AgentMessageRequest();
+        request.setTicketId(ticketId);
+        request.setArticleId(article.get("id").asLong());
+        request.setMessage(article.path("body").asText(null));
+        request.setSender(article.path("sender").asText(null));
+        request.setInternal(article.path("internal").asBoolean(false));
+        return request;
+    }
+}
@@ -1,95 +1,380 @@
 package com.eneo.support.service;
 
 import com.eneo.support.dto.AgentLocationRequest;
+import com.eneo.support.dto.AgentPresenceFilter;
+import com.eneo.support.dto.AgentStatusPage;
 import com.eneo.support.dto.AgentStatusResponse;
+import com.eneo.support.dto.AgentTrackResponse;
+import com.eneo.support.dto.LocationBatchResponse;
+import com.eneo.support.dto.NearestAgentResponse;
 import com.eneo.support.model.Agent;
 import com.eneo.support.repository.AgentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementWriter;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
 /**
  * Service pour gérer la logique métier liée aux agents.
  * VERSION MISE À JOUR : Gère la persistance en base de données et le statut de connexion.
+ * La présence des agents (dernière position vue) est tenue dans Redis, la liste des agents
+ * n'est donc plus recalculée à partir de la table {@code agents} à chaque rafraîchissement.
  */
 @Service
 public class AgentService {
 
     private static final Logger logger = LoggerFactory.getLogger(AgentService.class);
     private static final String AGENT_LOCATION_KEY_PREFIX = "agent:location:";
+    private static final String STATUS_ONLINE = "En ligne";
+    private static final String STATUS_OFFLINE = "Hors ligne";
+    private static final Duration LOCATION_TTL = Duration.ofMinutes(5);
+
+    // Présence : ensemble trié (score = dernière position vue, en epoch ms) et dernière position "lat,lon" par agent
+    private static final String AGENT_PRESENCE_KEY = "agent:presence";
+    private static final String AGENT_POSITIONS_KEY = "agent:positions";
+    private static final int SEED_CHUNK_SIZE = 1000;
+
+    // Pour chaque agent du lot, exécuté côté Redis en une seule commande : ZADD GT CH agent:presence <ts> <id>,
+    // puis, seulement si l'horodatage avance (position plus récente que celle enregistrée),
+    // SET agent:location:<id> <valeur> EX <ttl> et HSET agent:positions <id> <lat,lon>
+    // KEYS = [présence, positions, clés de localisation...], ARGV = [ttl, puis (valeur, id, ts, position) par agent]
+    // Retourne le nombre de positions appliquées (les positions plus anciennes ou déjà vues sont ignorées).
+    private static final RedisScript<Long> SET_LOCATIONS_SCRIPT = RedisScript.of(
+            "local applied = 0 "
+                    + "for i = 3, #KEYS do "
+                    + "local base = 2 + (i - 3) * 4 "
+                    + "if redis.call('ZADD', KEYS[1], 'GT', 'CH', ARGV[base + 2], ARGV[base + 1]) == 1 then "
+                    + "redis.call('SET', KEYS[i], ARGV[base], 'EX', ARGV[1]) "
+                    + "redis.call('HSET', KEYS[2], ARGV[base + 1], ARGV[base + 3]) "
+                    + "applied = applied + 1 "
+                    + "end "
+                    + "end "
+                    + "return applied",
+            Long.class);
+
+    // Initialisation : n'ajoute que les agents absents (ZADD NX / HSETNX), sans écraser des données plus récentes.
+    // ARGV = (id, ts, position ou "") par agent
+    private static final RedisScript<Long> SEED_PRESENCE_SCRIPT = RedisScript.of(
+            "for i = 1, #ARGV, 3 do "
+                    + "redis.call('ZADD', KEYS[1], 'NX', ARGV[i + 1], ARGV[i]) "
+                    + "if ARGV[i + 2] ~= '' then redis.call('HSETNX', KEYS[2], ARGV[i], ARGV[i + 2]) end "
+                    + "end "
+                    + "return #ARGV / 3",
+            Long.class);
 
     private final ReactiveRedisTemplate<String, Object> redisTemplate;
+    private final ReactiveStringRedisTemplate stringRedisTemplate;
     private final AgentRepository agentRepository;
+    private final AgentSpatialIndex spatialIndex;
+    private final AgentLocationWriteBehind writeBehind;
+    private final AgentPositionFeed positionFeed;
+    private final AgentTrackStore trackStore;
+    private final Duration onlineThreshold;
+    private final Scheduler persistenceScheduler;
 
-    public AgentService(ReactiveRedisTemplate<String, Object> redisTemplate, AgentRepository agentRepository) {
+    private final Counter acceptedLocations;
+    private final Counter droppedLocations;
+    private final Timer redisWriteTimer;
+
+    public AgentService(ReactiveRedisTemplate<String, Object> redisTemplate,
+                        ReactiveStringRedisTemplate stringRedisTemplate,
+                        AgentRepository agentRepository,
+                        AgentSpatialIndex spatialIndex,
+                        AgentLocationWriteBehind writeBehind,
+                        AgentPositionFeed positionFeed,
+                        AgentTrackStore trackStore,
+                        Scheduler persistenceScheduler,
+                        MeterRegistry meterRegistry,
+                        @Value("${agent.online-threshold:PT5M}") Duration onlineThreshold) {
         this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
         this.agentRepository = agentRepository;
+        this.spatialIndex = spatialIndex;
+        this.writeBehind = writeBehind;
+        this.positionFeed = positionFeed;
+        this.trackStore = trackStore;
+        this.onlineThreshold = onlineThreshold;
+        this.persistenceScheduler = persistenceScheduler;
+        this.acceptedLocations = Counter.builder("agent.location.updates")
+                .description("Positions d'agents reçues")
+                .tag("outcome", "accepted")
+                .register(meterRegistry);
+        this.droppedLocations = Counter.builder("agent.location.updates")
+                .description("Positions d'agents reçues")
+                .tag("outcome", "dropped")
+                .register(meterRegistry);
+        this.redisWriteTimer = Timer.builder("agent.location.redis.write")
+                .description("Écriture d'un lot de positions dans Redis (script EVAL)")
+                .register(meterRegistry);
     }
 
     /**
      * Met à jour la dernière position connue d'un agent dans Redis (temps réel)
-     * ET dans la base de données PostgreSQL (persistance).
+     * ET dans la base de données PostgreSQL (persistance différée, voir {@link AgentLocationWriteBehind}).
      */
     public Mono<Void> updateAgentLocation(AgentLocationRequest locationRequest) {
         if (locationRequest == null || locationRequest.getAgentId() == null) {
             logger.warn("Requête de mise à jour de localisation reçue avec des données invalides.");
             return Mono.empty();
         }
+        logger.debug("Mise à jour de la localisation {} {} {}", kv("agentId", locationRequest.getAgentId()),
+                kv("latitude", locationRequest.getLatitude()), kv("longitude", locationRequest.getLongitude()));
+        return updateAgentLocations(List.of(locationRequest).iterator()).then();
+    }
+
+    /**
+     * Traite en une seule passe un lot de positions horodatées (rejeu après une perte de couverture).
+     * Les positions plus anciennes que la dernière position connue de l'agent sont ignorées ;
+     * seule la plus récente de chaque agent est écrite, en un seul aller-retour Redis.
+     * @param locations Les positions, consommées au fil de l'eau (le lot n'est jamais chargé entièrement).
+     * @return Le nombre de positions reçues, écrites et ignorées.
+     */
+    public Mono<LocationBatchResponse> updateAgentLocations(Iterator<AgentLocationRequest> locations) {
+        Instant now = Instant.now();
+        Map<Long, AgentLocationRequest> latestByAgent = new HashMap<>();
+        int received = 0;
+        int dropped = 0;
+
+        while (locations.hasNext()) {
+            AgentLocationRequest location = locations.next();
+            received++;
+            if (location == null || location.getAgentId() == null) {
+                dropped++;
+                continue;
+            }
+            // Un horodatage absent ou dans le futur (horloge du téléphone) est ramené à l'instant présent
+            long timestamp = location.getTimestamp() == null ? now.toEpochMilli() : Math.min(location.getTimestamp(), now.toEpochMilli());
+            location.setTimestamp(timestamp);
+
+            AgentLocationRequest latest = latestByAgent.get(location.getAgentId());
+            long knownTimestamp = latest != null ? latest.getTimestamp() : lastKnownTimestamp(location.getAgentId());
+            if (timestamp <= knownTimestamp) {
+                dropped++;
+                continue;
+            }
+            latestByAgent.put(location.getAgentId(), location);
+            // Toutes les positions acceptées alimentent l'historique, y compris les intermédiaires d'un lot rejoué
+            trackStore.record(location.getAgentId(), location.getLatitude(), location.getLongitude(), Instant.ofEpochMilli(timestamp));
+        }
+
+        for (AgentLocationRequest location : latestByAgent.values()) {
+            Instant seenAt = Instant.ofEpochMilli(location.getTimestamp());
+            // Index spatial en mémoire (recherche des agents les plus proches)
+            spatialIndex.update(location.getAgentId(), location.getLatitude(), location.getLongitude(), seenAt);
+            // La persistance en base est confiée au tampon write-behind : seule la dernière position
+            // de chaque agent est écrite, par batch, à intervalle régulier.
+            writeBehind.enqueue(location.getAgentId(), location.getLatitude(), location.getLongitude(), seenAt);
+            // Diffusion différée (regroupée par agent) vers la carte d'administration
+            positionFeed.publish(location.getAgentId(), location.getLatitude(), location.getLongitude(), seenAt);
+        }
+
+        acceptedLocations.increment(received - dropped);
+        droppedLocations.increment(dropped);
+        LocationBatchResponse response = new LocationBatchResponse(received, latestByAgent.size(), dropped);
+        return writeLocationsToRedis(latestByAgent.values()).thenReturn(response);
+    }
+
+    /**
+     * Trajet d'un agent sur une période, simplifié à au plus {@code maxPoints} points.
+     */
+    public Mono<AgentTrackResponse> getAgentTrack(Long agentId, Instant from, Instant to, int maxPoints) {
+        return Mono.fromCallable(() -> trackStore.track(agentId, from, to, maxPoints))
+                .subscribeOn(persistenceScheduler);
+    }
 
-        String key = AGENT_LOCATION_KEY_PREFIX + locationRequest.getAgentId();
-
-        // Exécuter la sauvegarde en base de données en arrière-plan
-        Mono.fromRunnable(() -> {
-            Agent agent = agentRepository.findById(locationRequest.getAgentId())
-                    .orElseGet(() -> {
-                        // Si l'agent n'existe pas, on le crée à la volée.
-                        // Dans un vrai système, la création d'agent serait un processus séparé.
-                        logger.warn("L'agent avec l'ID {} n'a pas été trouvé. Création d'un nouvel agent.", locationRequest.getAgentId());
-                        Agent newAgent = new Agent();
-                        newAgent.setId(locationRequest.getAgentId());
-                        newAgent.setFirstName("Agent"); // Valeur par défaut
-                        newAgent.setLastName(String.valueOf(locationRequest.getAgentId()));
-                        return newAgent;
-                    });
-
-            agent.setLastLatitude(locationRequest.getLatitude());
-            agent.setLastLongitude(locationRequest.getLongitude());
-            agent.setLastSeenAt(Instant.now());
-            agentRepository.save(agent);
-            logger.info("Position de l'agent {} persistée en base de données.", agent.getId());
-        }).subscribeOn(Schedulers.boundedElastic()).subscribe();
-
-        // Écrire dans Redis pour le suivi temps réel avec une expiration
-        logger.info("Mise à jour de la localisation pour l'agent ID {} -> Clé Redis: {}, Valeur: {}",
-                locationRequest.getAgentId(), key, locationRequest.toString());
-        return redisTemplate.opsForValue()
-                .set(key, locationRequest, Duration.ofMinutes(5))
-                .doOnError(error -> logger.error("Erreur lors de l'écriture dans Redis pour la clé {}: ", key, error))
-                .then();
+    private long lastKnownTimestamp(Long agentId) {
+        AgentSpatialIndex.Entry entry = spatialIndex.get(agentId);
+        return entry != null && entry.lastSeenAt() != null ? entry.lastSeenAt().toEpochMilli() : Long.MIN_VALUE;
+    }
+
+    /**
+     * Écrit les positions et met à jour la présence des agents en une seule commande EVAL
+     * (un seul aller-retour, quel que soit le nombre d'agents). Une position qui n'est pas plus récente
+     * que celle déjà enregistrée dans Redis (instance concurrente, message rejoué) est ignorée.
+     * Les valeurs sont sérialisées avec le sérialiseur du template Redis principal,
+     * afin de rester lisibles par {@code opsForValue().get(...)}.
+     */
+    private Mono<Void> writeLocationsToRedis(Collection<AgentLocationRequest> locations) {
+        if (locations.isEmpty()) {
+            return Mono.empty();
+        }
+        RedisElementWriter<Object> valueWriter = redisTemplate.getSerializationContext().getValueSerializationPair().getWriter();
+        List<String> keys = new ArrayList<>(locations.size() + 2);
+        keys.add(AGENT_PRESENCE_KEY);
+        keys.add(AGENT_POSITIONS_KEY);
+        List<String> args = new ArrayList<>(locations.size() * 4 + 1);
+        args.add(String.valueOf(LOCATION_TTL.toSeconds()));
+        for (AgentLocationRequest location : locations) {
+            keys.add(AGENT_LOCATION_KEY_PREFIX + location.getAgentId());
+            args.add(StandardCharsets.UTF_8.decode(valueWriter.write(location)).toString());
+            args.add(String.valueOf(location.getAgentId()));
+            args.add(String.valueOf(location.getTimestamp()));
+            args.add(location.getLatitude() + "," + location.getLongitude());
+        }
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start();
+            return stringRedisTemplate.execute(SET_LOCATIONS_SCRIPT, keys, args)
+                    .doOnError(error -> logger.error("Erreur lors de l'écriture dans Redis de {} positions: ", locations.size(), error))
+                    .doFinally(signal -> sample.stop(redisWriteTimer))
+                    .then();
+        });
+    }
+
+    /**
+     * Récupère une page d'agents avec leur statut de connexion, à partir de la présence stockée dans Redis.
+     * Un agent est "En ligne" si sa dernière position date de moins de {@code agent.online-threshold}.
+     * Seuls les agents de la page demandée sont lus en base (pour leur nom et leur disponibilité).
+     * @param filter Filtre sur le statut de connexion.
+     * @param page Numéro de page (à partir de 0), les agents vus le plus récemment en premier.
+     * @param size Taille de la page.
+     * @return La page d'agents et le nombre total d'agents correspondant au filtre.
+     * @throws ArithmeticException si le décalage {@code page * size} dépasse un int.
+     */
+    public Mono<AgentStatusPage> getAgentsWithStatus(AgentPresenceFilter filter, int page, int size) {
+        Instant now = Instant.now();
+        long threshold = now.minus(onlineThreshold).toEpochMilli();
+        Range<Double> scoreRange = switch (filter) {
+            case ONLINE -> Range.of(Range.Bound.inclusive((double) threshold), Range.Bound.unbounded());
+            case OFFLINE -> Range.of(Range.Bound.unbounded(), Range.Bound.exclusive((double) threshold));
+            case ALL -> Range.unbounded();
+        };
+        Limit limit = Limit.limit().offset(Math.multiplyExact(page, size)).count(size);
+
+        ReactiveZSetOperations<String, String> zSet = stringRedisTemplate.opsForZSet();
+        Mono<Long> total = zSet.count(AGENT_PRESENCE_KEY, scoreRange);
+        Mono<List<ZSetOperations.TypedTuple<String>>> members = zSet
+                .reverseRangeByScoreWithScores(AGENT_PRESENCE_KEY, scoreRange, limit)
+                .collectList();
+
+        return Mono.zip(total, members)
+                .flatMap(tuple -> toStatusPage(tuple.getT2(), threshold)
+                        .map(items -> new AgentStatusPage(items, tuple.getT1(), page, size)));
+    }
+
+    private Mono<List<AgentStatusResponse>> toStatusPage(List<ZSetOperations.TypedTuple<String>> members, long threshold) {
+        if (members.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        List<Long> ids = members.stream().map(member -> Long.valueOf(member.getValue())).collect(Collectors.toList());
+        List<Object> fields = new ArrayList<>(ids.size());
+        ids.forEach(id -> fields.add(String.valueOf(id)));
+
+        Mono<List<Object>> positions = stringRedisTemplate.opsForHash().multiGet(AGENT_POSITIONS_KEY, fields);
+        Mono<Map<Long, Agent>> agents = Mono.fromCallable(() -> agentRepository.findAllById(ids).stream()
+                        .collect(Collectors.toMap(Agent::getId, Function.identity())))
+                .subscribeOn(persistenceScheduler);
+
+        return Mono.zip(positions, agents).map(tuple -> {
+            List<AgentStatusResponse> items = new ArrayList<>(members.size());
+            for (int i = 0; i < members.size(); i++) {
+                long lastSeen = members.get(i).getScore().longValue();
+                items.add(toStatusResponse(ids.get(i), lastSeen, (String) tuple.getT1().get(i), tuple.getT2().get(ids.get(i)), threshold));
+            }
+            return items;
+        });
+    }
+
+    static AgentStatusResponse toStatusResponse(Long agentId, long lastSeen, String position, Agent agent, long threshold) {
+        Double latitude = null;
+        Double longitude = null;
+        if (position != null) {
+            int separator = position.indexOf(',');
+            latitude = Double.valueOf(position.substring(0, separator));
+            longitude = Double.valueOf(position.substring(separator + 1));
+        }
+        // Un agent jamais vu a un score de 0 dans l'ensemble de présence
+        Instant lastSeenAt = lastSeen > 0 ? Instant.ofEpochMilli(lastSeen) : null;
+        String status = lastSeen >= threshold ? STATUS_ONLINE : STATUS_OFFLINE;
+        if (agent == null) {
+            // L'agent a émis une position mais n'est pas encore persisté (flush write-behind à venir)
+            return new AgentStatusResponse(agentId, "Agent", String.valueOf(agentId), false, lastSeenAt, latitude, longitude, status);
+        }
+        return new AgentStatusResponse(agentId, agent.getFirstName(), agent.getLastName(), agent.isAvailable(),
+                lastSeenAt, latitude, longitude, status);
+    }
+
+    /**
+     * Initialise, une seule fois au démarrage, l'index spatial et l'ensemble de présence Redis
+     * à partir des agents persistés. Les données existantes dans Redis ne sont pas écrasées.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        List<Agent> agents = agentRepository.findAll();
+        List<String> args = new ArrayList<>(agents.size() * 3);
+        for (Agent agent : agents) {
+            Instant lastSeenAt = agent.getLastSeenAt() != null ? agent.getLastSeenAt() : Instant.EPOCH;
+            String position = "";
+            if (agent.getLastLatitude() != null && agent.getLastLongitude() != null) {
+                spatialIndex.update(agent.getId(), agent.getLastLatitude(), agent.getLastLongitude(), lastSeenAt);
+                position = agent.getLastLatitude() + "," + agent.getLastLongitude();
+            }
+            args.add(String.valueOf(agent.getId()));
+            args.add(String.valueOf(lastSeenAt.toEpochMilli()));
+            args.add(position);
+        }
+        logger.info("Index spatial initialisé avec {} agents.", spatialIndex.size());
+
+        List<String> keys = List.of(AGENT_PRESENCE_KEY, AGENT_POSITIONS_KEY);
+        Flux.fromIterable(partition(args, SEED_CHUNK_SIZE * 3))
+                .concatMap(chunk -> stringRedisTemplate.execute(SEED_PRESENCE_SCRIPT, keys, chunk))
+                .doOnError(error -> logger.error("Impossible d'initialiser la présence des agents dans Redis: ", error))
+                .subscribe();
+    }
+
+    private static List<List<String>> partition(List<String> values, int chunkSize) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < values.size(); i += chunkSize) {
+            chunks.add(values.subList(i, Math.min(values.size(), i + chunkSize)));
+        }
+        return chunks;
     }
 
     /**
-     * Récupère la liste de tous les agents (depuis PostgreSQL) et calcule leur statut.
-     * Un agent est "En ligne" si sa dernière position a été vue il y a moins de 5 minutes.
-     * @return Une liste d'objets AgentStatusResponse.
+     * Recherche les agents les plus proches d'un point à partir de l'index spatial en mémoire.
+     * Aucune requête PostgreSQL n'est effectuée.
+     * @param k Nombre maximum d'agents à retourner.
+     * @param onlineOnly Si vrai, seuls les agents "En ligne" sont retenus.
+     * @return Les agents triés par distance croissante.
      */
-    public List<AgentStatusResponse> getAllAgentsWithStatus() {
-        List<Agent> allAgents = agentRepository.findAll();
-        Instant fiveMinutesAgo = Instant.now().minus(Duration.ofMinutes(5));
-
-        return allAgents.stream().map(agent -> {
-            boolean isOnline = agent.getLastSeenAt() != null && agent.getLastSeenAt().isAfter(fiveMinutesAgo);
-            String status = isOnline ? "En ligne" : "Hors ligne";
-            return new AgentStatusResponse(agent, status);
-        }).collect(Collectors.toList());
+    public List<NearestAgentResponse> findNearestAgents(double latitude, double longitude, int k, boolean onlineOnly) {
+        Instant now = Instant.now();
+        return spatialIndex.nearest(latitude, longitude, k, onlineOnly).stream()
+                .map(neighbor -> {
+                    AgentSpatialIndex.Entry entry = neighbor.entry();
+                    String status = spatialIndex.isOnline(entry, now) ? STATUS_ONLINE : STATUS_OFFLINE;
+                    return new NearestAgentResponse(entry.agentId(), entry.latitude(), entry.longitude(),
+                            neighbor.distanceKm(), entry.lastSeenAt(), status);
+                })
+                .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+}
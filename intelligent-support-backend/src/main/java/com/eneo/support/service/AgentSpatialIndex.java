@@ -0,0 +1,202 @@
+package com.eneo.support.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index spatial en mémoire des dernières positions connues des agents.
+ * Les positions sont rangées dans une grille régulière (cellules de {@code cellSizeDegrees} degrés),
+ * ce qui permet de répondre aux requêtes "k agents les plus proches" en ne visitant que
+ * les cellules voisines du point recherché, sans jamais interroger PostgreSQL.
+ * L'index est alimenté au démarrage par {@link AgentService#warmUp()}, puis à chaque position reçue.
+ */
+@Component
+public class AgentSpatialIndex {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180.0;
+    // Au-delà de ce nombre d'anneaux, un parcours complet des entrées est moins coûteux.
+    private static final int MAX_RINGS_BEFORE_SCAN = 64;
+
+    /**
+     * Position indexée d'un agent. Immuable : une mise à jour remplace l'entrée.
+     */
+    public record Entry(long agentId, double latitude, double longitude, Instant lastSeenAt, long cellKey) {
+    }
+
+    /**
+     * Résultat d'une recherche de proximité.
+     */
+    public record Neighbor(Entry entry, double distanceKm) {
+    }
+
+    private final double cellSizeDegrees;
+    private final Duration onlineThreshold;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> cells = new ConcurrentHashMap<>();
+
+    public AgentSpatialIndex(@Value("${agent.spatial-index.cell-size-degrees:0.05}") double cellSizeDegrees,
+                             @Value("${agent.online-threshold:PT5M}") Duration onlineThreshold) {
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.onlineThreshold = onlineThreshold;
+    }
+
+    /**
+     * Enregistre (ou déplace) la position d'un agent dans la grille.
+     */
+    public void update(long agentId, double latitude, double longitude, Instant seenAt) {
+        long newCell = cellKey(latitude, longitude);
+        Entry newEntry = new Entry(agentId, latitude, longitude, seenAt, newCell);
+        // compute() sérialise les mises à jour concurrentes d'un même agent
+        entries.compute(agentId, (id, previous) -> {
+            if (previous == null || previous.cellKey() != newCell) {
+                if (previous != null) {
+                    removeFromCell(previous.cellKey(), id);
+                }
+                cells.computeIfAbsent(newCell, k -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+            return newEntry;
+        });
+    }
+
+    public void remove(long agentId) {
+        Entry previous = entries.remove(agentId);
+        if (previous != null) {
+            removeFromCell(previous.cellKey(), agentId);
+        }
+    }
+
+    public Entry get(long agentId) {
+        return entries.get(agentId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isOnline(Entry entry, Instant now) {
+        return entry.lastSeenAt() != null && entry.lastSeenAt().isAfter(now.minus(onlineThreshold));
+    }
+
+    /**
+     * Retourne les {@code k} agents les plus proches du point donné, triés par distance croissante.
+     * @param onlineOnly si vrai, ignore les agents dont la dernière position date de plus que le seuil "en ligne".
+     */
+    public List<Neighbor> nearest(double latitude, double longitude, int k, boolean onlineOnly) {
+        if (k <= 0 || entries.isEmpty()) {
+            return List.of();
+        }
+        Instant now = Instant.now();
+        // Tas max borné à k : la racine est le plus éloigné des candidats retenus
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(k, Comparator.comparingDouble(Neighbor::distanceKm).reversed());
+
+        int row = row(latitude);
+        int col = col(longitude);
+        for (int ring = 0; ring <= MAX_RINGS_BEFORE_SCAN; ring++) {
+            visitRing(row, col, ring, latitude, longitude, k, onlineOnly, now, best);
+            if (best.size() == k && best.peek().distanceKm() <= minDistanceBeyondRing(latitude, ring)) {
+                return sorted(best);
+            }
+        }
+
+        // Agents trop dispersés (ou trop peu nombreux) : parcours complet
+        best.clear();
+        for (Entry entry : entries.values()) {
+            offer(entry, latitude, longitude, k, onlineOnly, now, best);
+        }
+        return sorted(best);
+    }
+
+    private void visitRing(int row, int col, int ring, double latitude, double longitude,
+                           int k, boolean onlineOnly, Instant now, PriorityQueue<Neighbor> best) {
+        for (int r = row - ring; r <= row + ring; r++) {
+            boolean edgeRow = r == row - ring || r == row + ring;
+            // Sur les lignes intermédiaires, seules les deux colonnes du bord appartiennent à l'anneau
+            int step = edgeRow || ring == 0 ? 1 : 2 * ring;
+            for (int c = col - ring; c <= col + ring; c += step) {
+                Set<Long> cell = cells.get(pack(r, c));
+                if (cell == null) {
+                    continue;
+                }
+                for (Long agentId : cell) {
+                    Entry entry = entries.get(agentId);
+                    if (entry != null) {
+                        offer(entry, latitude, longitude, k, onlineOnly, now, best);
+                    }
+                }
+            }
+        }
+    }
+
+    private void offer(Entry entry, double latitude, double longitude, int k, boolean onlineOnly,
+                       Instant now, PriorityQueue<Neighbor> best) {
+        if (onlineOnly && !isOnline(entry, now)) {
+            return;
+        }
+        double distance = haversineKm(latitude, longitude, entry.latitude(), entry.longitude());
+        if (best.size() < k) {
+            best.add(new Neighbor(entry, distance));
+        } else if (distance < best.peek().distanceKm()) {
+            best.poll();
+            best.add(new Neighbor(entry, distance));
+        }
+    }
+
+    /**
+     * Borne inférieure de la distance entre le point et toute cellule située hors des anneaux 0..ring.
+     * Le degré de longitude se réduit avec la latitude, on prend donc le cas le plus défavorable.
+     */
+    private double minDistanceBeyondRing(double latitude, int ring) {
+        double worstLatitude = Math.min(89.0, Math.abs(latitude) + (ring + 1) * cellSizeDegrees);
+        double kmPerDegreeLon = KM_PER_DEGREE * Math.cos(Math.toRadians(worstLatitude));
+        return ring * cellSizeDegrees * Math.min(KM_PER_DEGREE, kmPerDegreeLon);
+    }
+
+    private static List<Neighbor> sorted(PriorityQueue<Neighbor> best) {
+        List<Neighbor> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble(Neighbor::distanceKm));
+        return result;
+    }
+
+    private void removeFromCell(long cellKey, long agentId) {
+        cells.computeIfPresent(cellKey, (key, members) -> {
+            members.remove(agentId);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    private long cellKey(double latitude, double longitude) {
+        return pack(row(latitude), col(longitude));
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor((latitude + 90.0) / cellSizeDegrees);
+    }
+
+    private int col(double longitude) {
+        return (int) Math.floor((longitude + 180.0) / cellSizeDegrees);
+    }
+
+    private static long pack(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    public static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,238 @@
+package com.eneo.support.service;
+
+import com.eneo.support.dto.AgentTrackPoint;
+import com.eneo.support.dto.AgentTrackResponse;
+import com.eneo.support.model.AgentTrackChunk;
+import com.eneo.support.repository.AgentTrackChunkRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Historique des positions des agents, en ajout seul.
+ * Les positions de chaque agent sont accumulées en mémoire puis écrites par tronçons ({@link AgentTrackChunk}) :
+ * une ligne encodée en deltas pour plusieurs minutes de trajet, au lieu d'une ligne par position.
+ * La lecture d'une période assemble les tronçons en base et le tronçon en cours, puis simplifie le trajet
+ * côté serveur pour borner le nombre de points renvoyés.
+ */
+@Component
+public class AgentTrackStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentTrackStore.class);
+
+    /**
+     * Tronçon en cours d'un agent. Les points arrivent dans l'ordre chronologique (voir AgentService).
+     */
+    private static final class OpenChunk {
+        private final List<AgentTracks.Point> points = new ArrayList<>();
+        private final long openedAtNanos = System.nanoTime();
+    }
+
+    private final AgentTrackChunkRepository chunkRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxChunkPoints;
+    private final long maxChunkAgeNanos;
+    private final Duration retention;
+    private final int maxUnsavedChunks;
+
+    private final Map<Long, OpenChunk> openChunks = new ConcurrentHashMap<>();
+    // Tronçons fermés dont l'écriture a échoué, retentés un par un aux flushs suivants (les plus anciens d'abord)
+    private final ConcurrentLinkedQueue<AgentTrackChunk> unsaved = new ConcurrentLinkedQueue<>();
+
+    private final Counter recordedPoints;
+    private final Counter writtenChunks;
+    private final Counter droppedChunks;
+
+    public AgentTrackStore(AgentTrackChunkRepository chunkRepository,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${agent.track.max-chunk-points:500}") int maxChunkPoints,
+                           @Value("${agent.track.max-chunk-age:PT5M}") Duration maxChunkAge,
+                           @Value("${agent.track.retention:P90D}") Duration retention,
+                           @Value("${agent.track.max-unsaved-chunks:10000}") int maxUnsavedChunks) {
+        this.chunkRepository = chunkRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxChunkPoints = maxChunkPoints;
+        this.maxChunkAgeNanos = maxChunkAge.toNanos();
+        this.retention = retention;
+        this.maxUnsavedChunks = maxUnsavedChunks;
+        this.recordedPoints = Counter.builder("agent.track.points").register(meterRegistry);
+        this.writtenChunks = Counter.builder("agent.track.chunks.written").register(meterRegistry);
+        this.droppedChunks = Counter.builder("agent.track.chunks.dropped").register(meterRegistry);
+        meterRegistry.gauge("agent.track.open.chunks", openChunks, Map::size);
+        meterRegistry.gauge("agent.track.unsaved.chunks", unsaved, ConcurrentLinkedQueue::size);
+    }
+
+    /**
+     * Ajoute une position à l'historique de l'agent.
+     */
+    public void record(long agentId, double latitude, double longitude, Instant recordedAt) {
+        AgentTracks.Point point = AgentTracks.Point.of(recordedAt.toEpochMilli(), latitude, longitude);
+        openChunks.compute(agentId, (id, chunk) -> {
+            OpenChunk current = chunk != null ? chunk : new OpenChunk();
+            current.points.add(point);
+            return current;
+        });
+        recordedPoints.increment();
+    }
+
+    /**
+     * Écrit les tronçons pleins ou ouverts depuis plus de {@code agent.track.max-chunk-age}.
+     */
+    @Scheduled(fixedDelayString = "${agent.track.flush-interval-ms:30000}")
+    public void flush() {
+        long now = System.nanoTime();
+        List<AgentTrackChunk> chunks = new ArrayList<>();
+        for (Long agentId : openChunks.keySet()) {
+            openChunks.computeIfPresent(agentId, (id, chunk) -> {
+                if (chunk.points.size() < maxChunkPoints && now - chunk.openedAtNanos < maxChunkAgeNanos) {
+                    return chunk;
+                }
+                chunks.add(toEntity(id, chunk.points));
+                return null;
+            });
+        }
+        write(chunks);
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        List<AgentTrackChunk> chunks = new ArrayList<>();
+        for (Long agentId : openChunks.keySet()) {
+            OpenChunk chunk = openChunks.remove(agentId);
+            if (chunk != null) {
+                chunks.add(toEntity(agentId, chunk.points));
+            }
+        }
+        write(chunks);
+    }
+
+    /**
+     * Les nouveaux tronçons sont écrits en un lot. Si le lot échoue, ils rejoignent les tronçons en attente,
+     * sans leur identifiant : un identifiant IDENTITY attribué avant l'annulation de la transaction ne correspond
+     * à aucune ligne, et le tronçon serait ensuite fusionné ({@code merge}) au lieu d'être inséré.
+     * Les tronçons en attente sont retentés un par un, pour qu'une ligne invalide ne bloque pas les autres.
+     */
+    private synchronized void write(List<AgentTrackChunk> chunks) {
+        if (!chunks.isEmpty()) {
+            try {
+                chunkRepository.saveAll(chunks);
+                writtenChunks.increment(chunks.size());
+            } catch (RuntimeException e) {
+                logger.error("Échec de l'écriture de {} tronçons de trajet, nouvel essai au prochain cycle.", chunks.size(), e);
+                chunks.forEach(chunk -> chunk.setId(null));
+                unsaved.addAll(chunks);
+                dropOldestUnsaved();
+                // Base probablement indisponible : les tronçons en attente seront retentés au prochain cycle
+                return;
+            }
+        }
+        retryUnsaved();
+    }
+
+    private void retryUnsaved() {
+        int failures = 0;
+        for (Iterator<AgentTrackChunk> iterator = unsaved.iterator(); iterator.hasNext(); ) {
+            AgentTrackChunk chunk = iterator.next();
+            try {
+                chunkRepository.save(chunk);
+                iterator.remove();
+                writtenChunks.increment();
+            } catch (RuntimeException e) {
+                chunk.setId(null);
+                if (failures++ == 0) {
+                    logger.warn("Échec de l'écriture d'un tronçon de trajet de l'agent {}: {}", chunk.getAgentId(), e.getMessage());
+                }
+            }
+        }
+        if (failures > 0) {
+            logger.warn("{} tronçon(s) de trajet toujours en attente d'écriture.", failures);
+        }
+    }
+
+    private void dropOldestUnsaved() {
+        int excess = unsaved.size() - maxUnsavedChunks;
+        for (int i = 0; i < excess && unsaved.poll() != null; i++) {
+            droppedChunks.increment();
+        }
+        if (excess > 0) {
+            logger.error("{} tronçon(s) de trajet abandonné(s) : plus de {} tronçons en attente d'écriture.", excess, maxUnsavedChunks);
+        }
+    }
+
+    private static AgentTrackChunk toEntity(Long agentId, List<AgentTracks.Point> points) {
+        AgentTrackChunk chunk = new AgentTrackChunk();
+        chunk.setAgentId(agentId);
+        chunk.setStartTime(Instant.ofEpochMilli(points.get(0).epochMillis()));
+        chunk.setEndTime(Instant.ofEpochMilli(points.get(points.size() - 1).epochMillis()));
+        chunk.setPointCount(points.size());
+        chunk.setData(AgentTracks.encode(points));
+        return chunk;
+    }
+
+    /**
+     * Trajet d'un agent entre {@code from} et {@code to}, réduit à au plus {@code maxPoints} points.
+     */
+    public AgentTrackResponse track(Long agentId, Instant from, Instant to, int maxPoints) {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        List<AgentTracks.Point> points = new ArrayList<>();
+
+        for (AgentTrackChunk chunk : chunkRepository.findOverlapping(agentId, from, to)) {
+            addInRange(points, AgentTracks.decode(chunk.getData()), fromMillis, toMillis);
+        }
+        for (AgentTrackChunk chunk : unsaved) {
+            if (chunk.getAgentId().equals(agentId)) {
+                addInRange(points, AgentTracks.decode(chunk.getData()), fromMillis, toMillis);
+            }
+        }
+        List<AgentTracks.Point> recent = new ArrayList<>();
+        openChunks.computeIfPresent(agentId, (id, chunk) -> {
+            recent.addAll(chunk.points);
+            return chunk;
+        });
+        addInRange(points, recent, fromMillis, toMillis);
+        // Un tronçon retenté peut s'intercaler entre des tronçons déjà écrits
+        points.sort((a, b) -> Long.compare(a.epochMillis(), b.epochMillis()));
+
+        List<AgentTrackPoint> simplified = AgentTracks.simplify(points, maxPoints).stream()
+                .map(point -> new AgentTrackPoint(point.latitude(), point.longitude(), Instant.ofEpochMilli(point.epochMillis())))
+                .toList();
+        return new AgentTrackResponse(agentId, from, to, points.size(), simplified);
+    }
+
+    private static void addInRange(List<AgentTracks.Point> target, List<AgentTracks.Point> points, long fromMillis, long toMillis) {
+        for (AgentTracks.Point point : points) {
+            if (point.epochMillis() >= fromMillis && point.epochMillis() <= toMillis) {
+                target.add(point);
+            }
+        }
+    }
+
+    /**
+     * Supprime les tronçons plus anciens que la durée de rétention.
+     */
+    @Scheduled(fixedDelayString = "${agent.track.purge-interval-ms:3600000}", initialDelayString = "${agent.track.purge-interval-ms:3600000}")
+    public void purge() {
+        Integer deleted = transactionTemplate.execute(status -> chunkRepository.deleteEndedBefore(Instant.now().minus(retention)));
+        if (deleted != null && deleted > 0) {
+            logger.info("{} tronçon(s) de trajet d'agents supprimé(s)", deleted);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.eneo.support.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Encodage et simplification des trajets d'agents.
+ * Les coordonnées sont stockées en millionièmes de degré (~11 cm) : chaque point est encodé par ses écarts
+ * (temps, latitude, longitude) avec le point précédent, en varint zigzag. Un point GPS tient ainsi en 4 à 8 octets
+ * au lieu de 24.
+ */
+final class AgentTracks {
+
+    private static final double E6 = 1_000_000d;
+
+    /**
+     * Point d'un trajet : instant en millisecondes epoch, coordonnées en millionièmes de degré.
+     */
+    record Point(long epochMillis, int latitudeE6, int longitudeE6) {
+
+        static Point of(long epochMillis, double latitude, double longitude) {
+            return new Point(epochMillis, (int) Math.round(latitude * E6), (int) Math.round(longitude * E6));
+        }
+
+        double latitude() {
+            return latitudeE6 / E6;
+        }
+
+        double longitude() {
+            return longitudeE6 / E6;
+        }
+    }
+
+    private AgentTracks() {
+    }
+
+    static byte[] encode(List<Point> points) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(points.size() * 6 + 5);
+        writeVarint(out, points.size());
+        long previousTime = 0;
+        int previousLatitude = 0;
+        int previousLongitude = 0;
+        for (Point point : points) {
+            writeVarint(out, zigzag(point.epochMillis() - previousTime));
+            writeVarint(out, zigzag(point.latitudeE6() - previousLatitude));
+            writeVarint(out, zigzag(point.longitudeE6() - previousLongitude));
+            previousTime = point.epochMillis();
+            previousLatitude = point.latitudeE6();
+            previousLongitude = point.longitudeE6();
+        }
+        return out.toByteArray();
+    }
+
+    static List<Point> decode(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int count = (int) readVarint(in);
+        List<Point> points = new ArrayList<>(count);
+        long time = 0;
+        int latitude = 0;
+        int longitude = 0;
+        for (int i = 0; i < count; i++) {
+            time += unzigzag(readVarint(in));
+            latitude += (int) unzigzag(readVarint(in));
+            longitude += (int) unzigzag(readVarint(in));
+            points.add(new Point(time, latitude, longitude));
+        }
+        return points;
+    }
+
+    /**
+     * Réduit un trajet à au plus {@code maxPoints} points en conservant sa forme (Douglas-Peucker).
+     * Au lieu d'une tolérance fixe, on ajoute à chaque étape le point le plus éloigné du tracé déjà retenu,
+     * jusqu'à atteindre {@code maxPoints} : le nombre de points renvoyés est ainsi borné quelle que soit la période.
+     * Les deux extrémités sont toujours conservées.
+     */
+    static List<Point> simplify(List<Point> points, int maxPoints) {
+        int n = points.size();
+        if (n <= Math.max(maxPoints, 2)) {
+            return points;
+        }
+        // Projection plane locale : un degré de longitude est raccourci d'un facteur cos(latitude)
+        double lonScale = Math.cos(Math.toRadians(points.get(0).latitude()));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = points.get(i).longitudeE6() * lonScale;
+            y[i] = points.get(i).latitudeE6();
+        }
+
+        boolean[] kept = new boolean[n];
+        kept[0] = true;
+        kept[n - 1] = true;
+        int keptCount = 2;
+        PriorityQueue<Segment> segments = new PriorityQueue<>((a, b) -> Double.compare(b.distance, a.distance));
+        Segment first = Segment.of(0, n - 1, x, y);
+        if (first != null) {
+            segments.add(first);
+        }
+        while (keptCount < Math.max(maxPoints, 2) && !segments.isEmpty()) {
+            Segment segment = segments.poll();
+            kept[segment.farthest] = true;
+            keptCount++;
+            Segment left = Segment.of(segment.start, segment.farthest, x, y);
+            Segment right = Segment.of(segment.farthest, segment.end, x, y);
+            if (left != null) {
+                segments.add(left);
+            }
+            if (right != null) {
+                segments.add(right);
+            }
+        }
+
+        List<Point> result = new ArrayList<>(keptCount);
+        for (int i = 0; i < n; i++) {
+            if (kept[i]) {
+                result.add(points.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Portion du trajet entre deux points retenus, avec son point le plus éloigné de la corde.
+     */
+    private record Segment(int start, int end, int farthest, double distance) {
+
+        /**
+         * @return null si le segment n'a pas de point intermédiaire à départager.
+         */
+        static Segment of(int start, int end, double[] x, double[] y) {
+            if (end - start < 2) {
+                return null;
+            }
+            double dx = x[end] - x[start];
+            double dy = y[end] - y[start];
+            double length = Math.hypot(dx, dy);
+            int farthest = start + 1;
+            double max = -1;
+            for (int i = start + 1; i < end; i++) {
+                double distance = length == 0
+                        ? Math.hypot(x[i] - x[start], y[i] - y[start])
+                        : Math.abs(dy * (x[i] - x[start]) - dx * (y[i] - y[start])) / length;
+                if (distance > max) {
+                    max = distance;
+                    farthest = i;
+                }
+            }
+            return new Segment(start, end, farthest, max);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint invalide dans un tronçon de trajet");
+    }
+}
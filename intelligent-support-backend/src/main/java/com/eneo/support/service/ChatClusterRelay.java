@@ -0,0 +1,73 @@
+package com.eneo.support.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Relais des messages de chat entre les instances du backend via Redis pub/sub.
+ * Chaque salon de chat correspond à un canal {@code chat:room:<interventionId>} ; une instance
+ * ne s'abonne qu'aux canaux des salons pour lesquels elle a des clients WebSocket connectés.
+ * Le message est publié déjà encodé (JSON UTF-8) : chaque instance le reçoit et le décode une seule fois,
+ * quel que soit son nombre d'abonnés locaux.
+ */
+@Component
+public class ChatClusterRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatClusterRelay.class);
+    private static final String CHANNEL_PREFIX = "chat:room:";
+    // Le message publié est préfixé par l'identifiant de l'instance émettrice, pour ignorer ses propres messages
+    private static final char NODE_SEPARATOR = '\n';
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ReactiveRedisMessageListenerContainer listenerContainer;
+    private final boolean enabled;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public ChatClusterRelay(ReactiveStringRedisTemplate redisTemplate,
+                            ReactiveRedisMessageListenerContainer listenerContainer,
+                            @Value("${chat.cluster.enabled:true}") boolean enabled) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Publie un message déjà encodé pour les autres instances.
+     */
+    public Mono<Void> publish(long roomId, byte[] messageJson) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        String payload = nodeId + NODE_SEPARATOR + new String(messageJson, StandardCharsets.UTF_8);
+        return redisTemplate.convertAndSend(CHANNEL_PREFIX + roomId, payload)
+                .doOnError(error -> logger.error("Échec de la publication Redis pour le salon {}: {}", roomId, error.getMessage()))
+                .onErrorResume(error -> Mono.empty())
+                .then();
+    }
+
+    /**
+     * Messages publiés par les autres instances pour ce salon. L'abonnement Redis est ouvert
+     * à la souscription du Flux et fermé à son annulation.
+     */
+    public Flux<byte[]> subscribe(long roomId) {
+        if (!enabled) {
+            return Flux.never();
+        }
+        String ownPrefix = nodeId + NODE_SEPARATOR;
+        return listenerContainer.receive(ChannelTopic.of(CHANNEL_PREFIX + roomId))
+                .map(message -> message.getMessage())
+                .filter(payload -> !payload.startsWith(ownPrefix))
+                .map(payload -> payload.substring(payload.indexOf(NODE_SEPARATOR) + 1).getBytes(StandardCharsets.UTF_8))
+                .doOnError(error -> logger.error("Abonnement Redis interrompu pour le salon {}: {}", roomId, error.getMessage()));
+    }
+}
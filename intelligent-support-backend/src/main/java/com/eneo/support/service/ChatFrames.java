@@ -0,0 +1,35 @@
+package com.eneo.support.service;
+
+import com.eneo.support.dto.MessageResponse;
+import com.eneo.support.model.Message;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+
+/**
+ * Encodage des messages de chat diffusés aux clients WebSocket.
+ * Un message est sérialisé une seule fois en JSON UTF-8 ; chaque session n'en reçoit qu'une vue
+ * ({@link DataBufferFactory#wrap(byte[])} ne copie pas les octets).
+ */
+final class ChatFrames {
+
+    private ChatFrames() {
+    }
+
+    /**
+     * Sérialise le message au format diffusé (sans l'entité JPA ni l'intervention parente).
+     */
+    static byte[] encode(ObjectMapper objectMapper, Long interventionId, Message message) throws JsonProcessingException {
+        MessageResponse payload = new MessageResponse(message.getId(), interventionId, message.getContent(),
+                message.getSenderType(), message.getTimestamp());
+        return objectMapper.writeValueAsBytes(payload);
+    }
+
+    /**
+     * Trame texte pour une session, partageant les octets du message encodé.
+     */
+    static WebSocketMessage textMessage(DataBufferFactory bufferFactory, byte[] messageJson) {
+        return new WebSocketMessage(WebSocketMessage.Type.TEXT, bufferFactory.wrap(messageJson));
+    }
+}
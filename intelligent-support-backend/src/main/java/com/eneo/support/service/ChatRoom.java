@@ -0,0 +1,133 @@
+package com.eneo.support.service;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Salon de chat local à une instance : un Sink diffusant les messages encodés (JSON UTF-8) aux clients WebSocket,
+ * et l'abonnement Redis qui y injecte les messages publiés par les autres instances.
+ * Le Sink ne met rien en tampon : chaque client dispose de son propre tampon borné,
+ * géré selon la {@link SlowConsumerPolicy} du salon, afin qu'un client lent ne pénalise pas les autres.
+ * Le même tableau d'octets est partagé par tous les clients : il ne doit jamais être modifié après émission.
+ */
+class ChatRoom {
+
+    private final long interventionId;
+    private final Sinks.Many<byte[]> sink = Sinks.many().multicast().directBestEffort();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final AtomicInteger bufferedMessages = new AtomicInteger();
+    private volatile Disposable relaySubscription;
+    private volatile Disposable pendingEviction;
+
+    ChatRoom(long interventionId) {
+        this.interventionId = interventionId;
+    }
+
+    long interventionId() {
+        return interventionId;
+    }
+
+    int subscriberCount() {
+        return subscribers.get();
+    }
+
+    /**
+     * Nombre de messages en attente d'envoi, tous clients confondus.
+     */
+    int bufferedMessages() {
+        return bufferedMessages.get();
+    }
+
+    void attachRelay(Flux<byte[]> remoteMessages) {
+        this.relaySubscription = remoteMessages.subscribe(this::emit);
+    }
+
+    /**
+     * Enregistre un nouveau client et annule une éventuelle éviction programmée.
+     * Appelé sous le verrou de la map des salons.
+     */
+    void join() {
+        subscribers.incrementAndGet();
+        Disposable eviction = pendingEviction;
+        if (eviction != null) {
+            eviction.dispose();
+            pendingEviction = null;
+        }
+    }
+
+    /**
+     * @return le nombre de clients restants.
+     */
+    int leave() {
+        return subscribers.decrementAndGet();
+    }
+
+    void scheduleEviction(Disposable eviction) {
+        this.pendingEviction = eviction;
+    }
+
+    /**
+     * Diffuse un message aux abonnés locaux. Les émissions peuvent venir de plusieurs threads
+     * (requêtes HTTP, WebSocket, relais Redis) : on réessaie brièvement en cas d'émission concurrente.
+     */
+    Sinks.EmitResult emit(byte[] messageJson) {
+        Sinks.EmitResult result = sink.tryEmitNext(messageJson);
+        while (result == Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+            Thread.onSpinWait();
+            result = sink.tryEmitNext(messageJson);
+        }
+        return result;
+    }
+
+    /**
+     * Flux des messages pour un client, avec un tampon borné géré selon la politique donnée.
+     * @param onDropped appelé pour chaque message abandonné (DROP_OLDEST, CONFLATE).
+     */
+    Flux<byte[]> subscribe(SlowConsumerPolicy policy, int bufferSize, Consumer<byte[]> onDropped) {
+        AtomicInteger depth = new AtomicInteger();
+        Flux<byte[]> messages = sink.asFlux()
+                .doOnNext(message -> {
+                    depth.incrementAndGet();
+                    bufferedMessages.incrementAndGet();
+                });
+
+        messages = switch (policy) {
+            case DROP_OLDEST -> messages.onBackpressureBuffer(bufferSize, onDropped, BufferOverflowStrategy.DROP_OLDEST);
+            case CONFLATE -> messages.onBackpressureLatest();
+            case DISCONNECT -> messages.onBackpressureBuffer(bufferSize, message -> { }, BufferOverflowStrategy.ERROR);
+        };
+
+        return messages
+                .doOnNext(message -> release(depth, 1))
+                // Messages retirés du tampon sans être envoyés (abandon, annulation)
+                .doOnDiscard(byte[].class, message -> {
+                    release(depth, 1);
+                    if (policy == SlowConsumerPolicy.CONFLATE) {
+                        onDropped.accept(message);
+                    }
+                })
+                .doFinally(signal -> release(depth, depth.get()));
+    }
+
+    private void release(AtomicInteger depth, int count) {
+        // Un message peut être signalé à la fois par l'annulation et par le vidage du tampon : on ne descend pas sous zéro
+        int before = depth.getAndUpdate(current -> Math.max(0, current - count));
+        int released = Math.min(before, count);
+        if (released > 0) {
+            bufferedMessages.addAndGet(-released);
+        }
+    }
+
+    void close() {
+        Disposable subscription = relaySubscription;
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        sink.tryEmitComplete();
+    }
+}
@@ -6,55 +6,125 @@ import com.eneo.support.model.Intervention;
 import com.eneo.support.model.InterventionStatus;
 import com.eneo.support.model.Message;
 import com.eneo.support.model.SenderType;
+import com.eneo.support.model.ZammadSyncStatus;
 import com.eneo.support.repository.InterventionRepository;
 import com.eneo.support.repository.MessageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
 
 import java.time.Duration;
 
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
 @Service
 public class ChatService {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatService.class);
+    private static final String TICKET_TITLE = "Nouvelle réclamation de support";
+    private static final String SESSION_KEY_PREFIX = "session:intervention_id:";
+    private static final Duration SESSION_TTL = Duration.ofHours(24);
 
     private final ZammadService zammadService;
+    private final ZammadUserResolver zammadUserResolver;
+    private final ZammadOutbox zammadOutbox;
     private final InterventionRepository interventionRepository;
     private final MessageRepository messageRepository;
+    private final MessageBatchWriter messageBatchWriter;
     private final ReactiveRedisTemplate<String, String> redisTemplate;
     private final ChatWebSocketHandler webSocketHandler;
+    private final TransactionTemplate transactionTemplate;
+    private final InterventionCreationMode creationMode;
+    private final Scheduler persistenceScheduler;
+    private final MeterRegistry meterRegistry;
+    private final RequestTracer tracer;
+
+    // Cache local devant Redis pour session -> intervention : l'association ne change pas pendant la vie de la session.
+    // Sa durée reste courte devant celle de la clé Redis, qui fait foi pour l'expiration de la session.
+    private final Cache<String, Long> sessionInterventions;
+    // Interventions dont l'existence a déjà été vérifiée : un message de suivi n'a alors besoin d'aucune lecture
+    private final Cache<Long, Boolean> knownInterventions;
 
     public ChatService(ZammadService zammadService,
+                       ZammadUserResolver zammadUserResolver,
+                       ZammadOutbox zammadOutbox,
                        InterventionRepository interventionRepository,
                        MessageRepository messageRepository,
+                       MessageBatchWriter messageBatchWriter,
                        ReactiveRedisTemplate<String, String> redisTemplate,
-                       @Lazy ChatWebSocketHandler webSocketHandler) {
+                       @Lazy ChatWebSocketHandler webSocketHandler,
+                       PlatformTransactionManager transactionManager,
+                       Scheduler persistenceScheduler,
+                       MeterRegistry meterRegistry,
+                       RequestTracer tracer,
+                       @Value("${intervention.creation.mode:SYNC}") InterventionCreationMode creationMode,
+                       @Value("${chat.session-cache.ttl:PT10M}") Duration sessionCacheTtl,
+                       @Value("${chat.session-cache.max-size:100000}") long sessionCacheMaxSize) {
         this.zammadService = zammadService;
+        this.zammadUserResolver = zammadUserResolver;
+        this.zammadOutbox = zammadOutbox;
         this.interventionRepository = interventionRepository;
         this.messageRepository = messageRepository;
+        this.messageBatchWriter = messageBatchWriter;
         this.redisTemplate = redisTemplate;
         this.webSocketHandler = webSocketHandler;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.creationMode = creationMode;
+        this.persistenceScheduler = persistenceScheduler;
+        this.meterRegistry = meterRegistry;
+        this.tracer = tracer;
+        this.sessionInterventions = Caffeine.newBuilder()
+                .expireAfterWrite(sessionCacheTtl)
+                .maximumSize(sessionCacheMaxSize)
+                .build();
+        this.knownInterventions = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofHours(1))
+                .maximumSize(sessionCacheMaxSize)
+                .build();
     }
 
+    /**
+     * Traite un message du client. La durée de traitement, jusqu'à l'enregistrement du message
+     * et sa diffusion aux administrateurs, est mesurée par {@code chat.message.latency}
+     * et détaillée étape par étape dans une trace (voir {@link RequestTracer}).
+     */
     public Mono<ChatMessageResponse> processUserMessage(ChatMessageRequest request) {
-        String sessionId = request.getSessionId();
-
         boolean isFirstMessage = (request.getEmail() != null && !request.getEmail().isEmpty()) ||
                 (request.getPhone() != null && !request.getPhone().isEmpty());
 
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return tracer.root(isFirstMessage ? "chat.message.first" : "chat.message.follow_up", handleUserMessage(request, isFirstMessage))
+                    .doFinally(signal -> sample.stop(Timer.builder("chat.message.latency")
+                            .description("Traitement d'un message du client, jusqu'à sa diffusion")
+                            .tag("type", isFirstMessage ? "first" : "follow_up")
+                            .tag("outcome", signal == SignalType.ON_ERROR ? "error" : signal == SignalType.CANCEL ? "cancelled" : "success")
+                            .register(meterRegistry)));
+        });
+    }
+
+    private Mono<ChatMessageResponse> handleUserMessage(ChatMessageRequest request, boolean isFirstMessage) {
+        String sessionId = request.getSessionId();
+
         if (isFirstMessage) {
             return createNewIntervention(request)
                     .thenReturn(new ChatMessageResponse("Votre message a été transmis à un administrateur."));
         } else {
-            String interventionIdKey = "session:intervention_id:" + sessionId;
-            return redisTemplate.opsForValue().get(interventionIdKey)
+            return findInterventionIdForSession(sessionId)
                     // flatMap attend maintenant une valeur de retour (l'ID de l'intervention)
-                    .flatMap(interventionId -> addMessageToIntervention(request.getMessage(), Long.parseLong(interventionId), SenderType.CUSTOMER))
+                    .flatMap(interventionId -> addMessageToIntervention(request.getMessage(), interventionId, SenderType.CUSTOMER))
                     // map est appelé uniquement si flatMap a émis une valeur, ce qui signifie que tout s'est bien passé
                     .map(savedInterventionId -> new ChatMessageResponse("Votre message a été transmis."))
                     // switchIfEmpty n'est maintenant appelé QUE si la clé de session n'est VRAIMENT pas trouvée dans Redis
@@ -66,15 +136,62 @@ public class ChatService {
     }
 
     private Mono<Void> createNewIntervention(ChatMessageRequest request) {
-        return zammadService.findOrCreateUser(request.getFirstName(), request.getLastName(), request.getEmail(), request.getPhone())
-                .flatMap(zammadUser -> zammadService.createTicket(
-                        "Nouvelle réclamation de support",
+        return tracer.trace("chat.create_intervention", creationMode == InterventionCreationMode.LOCAL_FIRST
+                ? createNewInterventionLocally(request)
+                : createNewInterventionWithTicket(request));
+    }
+
+    /**
+     * Mode LOCAL_FIRST : l'intervention, son premier message et la demande de création du ticket sont enregistrés
+     * dans une même transaction, sans appel à Zammad. {@link ZammadOutboxDispatcher} crée ensuite le ticket
+     * et renseigne zammadTicketId.
+     */
+    private Mono<Void> createNewInterventionLocally(ChatMessageRequest request) {
+        if (ZammadUserResolver.cacheKey(request.getEmail(), request.getPhone()) == null) {
+            return Mono.error(new IllegalArgumentException("Un email ou un numéro de téléphone doit être fourni."));
+        }
+        return tracer.trace("db.create_intervention", Mono.fromCallable(() -> transactionTemplate.execute(status -> {
+                    Intervention intervention = new Intervention();
+                    intervention.setProblemDescription(request.getMessage());
+                    intervention.setLatitude(request.getLatitude());
+                    intervention.setLongitude(request.getLongitude());
+                    intervention.setStatus(InterventionStatus.NOUVEAU);
+                    intervention.setZammadSyncStatus(ZammadSyncStatus.PENDING_SYNC);
+                    Intervention savedIntervention = interventionRepository.save(intervention);
+
+                    Message message = new Message();
+                    message.setContent(request.getMessage());
+                    message.setSenderType(SenderType.CUSTOMER);
+                    message.setIntervention(savedIntervention);
+                    Message savedMessage = messageRepository.save(message);
+
+                    zammadOutbox.enqueueTicketCreation(savedIntervention, new ZammadOutbox.TicketCreation(
+                            request.getFirstName(), request.getLastName(), request.getEmail(), request.getPhone(),
+                            TICKET_TITLE, request.getMessage(), request.getLatitude(), request.getLongitude()));
+                    return savedMessage;
+                }))
+                .subscribeOn(persistenceScheduler))
+                .flatMap(savedMessage -> {
+                    Long interventionId = savedMessage.getIntervention().getId();
+                    logger.info("Intervention {} créée localement, ticket Zammad en attente de création.", interventionId);
+                    return tracer.trace("websocket.send", Mono.fromRunnable(() -> webSocketHandler.sendMessage(interventionId, savedMessage)))
+                            // Attendu avant de répondre : le message suivant du client doit retrouver son intervention
+                            .then(rememberSession(request.getSessionId(), interventionId));
+                })
+                .doOnError(error -> logger.error("Échec de la création de l'intervention pour la session {}: ", request.getSessionId(), error))
+                .then();
+    }
+
+    private Mono<Void> createNewInterventionWithTicket(ChatMessageRequest request) {
+        return zammadUserResolver.resolveUserId(request.getFirstName(), request.getLastName(), request.getEmail(), request.getPhone())
+                .flatMap(zammadUserId -> zammadService.createTicket(
+                        TICKET_TITLE,
                         request.getMessage(),
-                        zammadUser.getId(),
+                        zammadUserId,
                         request.getLatitude(),
                         request.getLongitude()
                 ))
-                .doOnSuccess(ticketResponse -> {
+                .flatMap(ticketResponse -> tracer.trace("db.save_intervention", Mono.fromCallable(() -> {
                     Intervention intervention = new Intervention();
                     intervention.setZammadTicketId(ticketResponse.getId());
                     intervention.setCustomerId(ticketResponse.getCustomer_id());
@@ -82,38 +199,58 @@ public class ChatService {
                     intervention.setLatitude(request.getLatitude());
                     intervention.setLongitude(request.getLongitude());
                     intervention.setStatus(InterventionStatus.NOUVEAU);
+                    intervention.setZammadSyncStatus(ZammadSyncStatus.SYNCED);
 
                     Intervention savedIntervention = interventionRepository.save(intervention);
                     logger.info("Intervention {} créée avec succès.", savedIntervention.getId());
 
-                    addMessageAndBroadcast(request.getMessage(), savedIntervention, SenderType.CUSTOMER);
-
-                    String interventionIdKey = "session:intervention_id:" + request.getSessionId();
-                    redisTemplate.opsForValue().set(interventionIdKey, String.valueOf(savedIntervention.getId()), Duration.ofHours(24)).subscribe();
-                })
+                    rememberSession(request.getSessionId(), savedIntervention.getId()).subscribe();
+                    return savedIntervention.getId();
+                }).subscribeOn(persistenceScheduler)))
+                .flatMap(interventionId -> messageBatchWriter.append(interventionId, request.getMessage(), SenderType.CUSTOMER))
                 .doOnError(error -> logger.error("Échec de la création de l'intervention pour la session {}: ", request.getSessionId(), error))
-                .subscribeOn(Schedulers.boundedElastic())
                 .then();
     }
 
-    // La signature de la méthode est changée de Mono<Void> à Mono<Long>
-    public Mono<Long> addMessageToIntervention(String content, Long interventionId, SenderType senderType) {
-        return Mono.fromCallable(() -> { // fromCallable permet de retourner une valeur
-            interventionRepository.findById(interventionId).ifPresent(intervention ->
-                    addMessageAndBroadcast(content, intervention, senderType)
-            );
-            return interventionId; // On retourne l'ID pour signaler le succès
-        }).subscribeOn(Schedulers.boundedElastic());
+    /**
+     * Intervention associée à une session de chat : cache local, puis Redis.
+     */
+    private Mono<Long> findInterventionIdForSession(String sessionId) {
+        Long cached = sessionInterventions.getIfPresent(sessionId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return tracer.trace("redis.find_session", redisTemplate.opsForValue().get(SESSION_KEY_PREFIX + sessionId))
+                .map(Long::parseLong)
+                .doOnNext(interventionId -> sessionInterventions.put(sessionId, interventionId));
     }
 
-    private void addMessageAndBroadcast(String content, Intervention intervention, SenderType senderType) {
-        Message message = new Message();
-        message.setContent(content);
-        message.setSenderType(senderType);
-        message.setIntervention(intervention);
-        Message savedMessage = messageRepository.save(message);
-        logger.info("Message de {} ajouté à l'intervention {}.", senderType, intervention.getId());
+    private Mono<Boolean> rememberSession(String sessionId, Long interventionId) {
+        sessionInterventions.put(sessionId, interventionId);
+        knownInterventions.put(interventionId, Boolean.TRUE);
+        return tracer.trace("redis.remember_session",
+                redisTemplate.opsForValue().set(SESSION_KEY_PREFIX + sessionId, String.valueOf(interventionId), SESSION_TTL));
+    }
 
-        webSocketHandler.sendMessage(intervention.getId(), savedMessage);
+    // La signature de la méthode est changée de Mono<Void> à Mono<Long>
+    public Mono<Long> addMessageToIntervention(String content, Long interventionId, SenderType senderType) {
+        // Vérification mise en cache, puis écriture groupée par simple référence : l'intervention (et ses agents)
+        // n'est pas chargée, le message de suivi coûte un seul INSERT, partagé avec les messages du même lot
+        Boolean known = knownInterventions.getIfPresent(interventionId);
+        Mono<Boolean> existsCheck = known != null
+                ? Mono.just(known)
+                : tracer.trace("db.intervention_exists", Mono.fromCallable(() -> knownInterventions.get(interventionId, interventionRepository::existsById))
+                        .subscribeOn(persistenceScheduler));
+        return existsCheck
+                .flatMap(exists -> {
+                    if (!exists) {
+                        knownInterventions.invalidate(interventionId);
+                        logger.warn("Message ignoré : l'intervention {} n'existe pas", interventionId);
+                        return Mono.just(interventionId);
+                    }
+                    return messageBatchWriter.append(interventionId, content, senderType)
+                            .doOnNext(savedMessage -> logger.info("Message ajouté à l'intervention {} {}", kv("interventionId", interventionId), kv("sender", senderType)))
+                            .thenReturn(interventionId); // On retourne l'ID pour signaler le succès
+                });
     }
 }
\ No newline at end of file
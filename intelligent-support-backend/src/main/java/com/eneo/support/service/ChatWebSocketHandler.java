@@ -1,31 +1,87 @@
 package com.eneo.support.service;
 
+import com.eneo.support.model.Message;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
 import org.springframework.web.reactive.socket.WebSocketHandler;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
 /**
  * Gère la logique de communication en temps réel pour le chat via WebSockets.
+ * Un salon est créé à la première connexion sur une intervention et supprimé lorsque son dernier client
+ * est parti depuis plus de {@code chat.rooms.eviction-grace-period}, ce qui libère aussi l'abonnement Redis.
  */
 @Component
 public class ChatWebSocketHandler implements WebSocketHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatWebSocketHandler.class);
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper objectMapper;
 
     // Un "Sink" est un composant réactif qui peut recevoir et diffuser des messages de manière thread-safe.
-    // Nous lions chaque interventionId à un Sink pour créer des "salons de chat".
-    private final Map<Long, Sinks.Many<String>> chatRooms = new ConcurrentHashMap<>();
+    // Nous lions chaque interventionId à un salon (Sink + abonnement Redis) pour créer des "salons de chat".
+    private final Map<Long, ChatRoom> chatRooms = new ConcurrentHashMap<>();
+    // Politiques définies par l'administration pour certains salons ; elles survivent à l'éviction du salon.
+    private final Map<Long, SlowConsumerPolicy> policyOverrides = new ConcurrentHashMap<>();
+    private final ChatClusterRelay clusterRelay;
+
+    private final int bufferSize;
+    private final Duration evictionGracePeriod;
+    private final SlowConsumerPolicy defaultPolicy;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter evictedRooms;
+    private final Counter disconnectedSubscribers;
+
+    public ChatWebSocketHandler(ChatClusterRelay clusterRelay,
+                                ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${chat.rooms.buffer-size:256}") int bufferSize,
+                                @Value("${chat.rooms.eviction-grace-period:PT30S}") Duration evictionGracePeriod,
+                                @Value("${chat.rooms.slow-consumer-policy:DROP_OLDEST}") SlowConsumerPolicy defaultPolicy) {
+        this.clusterRelay = clusterRelay;
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.evictionGracePeriod = evictionGracePeriod;
+        this.defaultPolicy = defaultPolicy;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("chat.rooms.active", chatRooms, Map::size)
+                .description("Salons de chat ouverts sur cette instance")
+                .register(meterRegistry);
+        Gauge.builder("chat.rooms.subscribers", chatRooms,
+                        rooms -> rooms.values().stream().mapToInt(ChatRoom::subscriberCount).sum())
+                .description("Clients WebSocket connectés aux salons de cette instance")
+                .register(meterRegistry);
+        Gauge.builder("chat.rooms.buffered.messages", chatRooms,
+                        rooms -> rooms.values().stream().mapToInt(ChatRoom::bufferedMessages).sum())
+                .description("Messages en attente d'envoi dans les tampons des clients")
+                .register(meterRegistry);
+        this.evictedRooms = Counter.builder("chat.rooms.evicted")
+                .description("Salons supprimés après le départ de leur dernier client")
+                .register(meterRegistry);
+        this.disconnectedSubscribers = Counter.builder("chat.rooms.slow.disconnects")
+                .description("Clients déconnectés car trop lents (politique DISCONNECT)")
+                .register(meterRegistry);
+    }
 
     @Override
     public Mono<Void> handle(WebSocketSession session) {
@@ -36,42 +92,130 @@ public class ChatWebSocketHandler implements WebSocketHandler {
             return session.close();
         }
 
-        // 2. Créer ou récupérer le "salon de chat" pour cette intervention
-        Sinks.Many<String> sink = chatRooms.computeIfAbsent(interventionId, id ->
-                Sinks.many().multicast().onBackpressureBuffer()
-        );
+        // 2. Créer ou récupérer le "salon de chat" pour cette intervention, et s'y inscrire
+        ChatRoom room = joinRoom(interventionId);
+        SlowConsumerPolicy policy = getSlowConsumerPolicy(interventionId);
+        Counter droppedMessages = Counter.builder("chat.rooms.dropped.messages")
+                .tag("policy", policy.name())
+                .description("Messages abandonnés pour des clients trop lents")
+                .register(meterRegistry);
 
         // 3. Logique de gestion des messages entrants (ce que le serveur reçoit)
         Mono<Void> input = session.receive()
                 .map(WebSocketMessage::getPayloadAsText)
-                .doOnNext(messageJson -> {
-                    logger.info("Message reçu pour l'intervention {}: {}", interventionId, messageJson);
-                    // On diffuse le message à tous les abonnés de ce salon de chat
-                    sink.tryEmitNext(messageJson);
+                .map(messageJson -> {
+                    // Le contenu n'est pas journalisé : seule sa taille, en champ structuré
+                    logger.info("Message WebSocket reçu {} {}", kv("interventionId", interventionId), kv("length", messageJson.length()));
+                    // On diffuse le message à tous les abonnés de ce salon de chat, sur toutes les instances
+                    byte[] encoded = messageJson.getBytes(StandardCharsets.UTF_8);
+                    recordEmit(room.emit(encoded));
+                    return encoded;
                 })
+                .concatMap(encoded -> clusterRelay.publish(interventionId, encoded))
                 .then();
 
-        // 4. Logique de gestion des messages sortants (ce que le serveur envoie)
-        Flux<WebSocketMessage> output = sink.asFlux()
-                .map(session::textMessage);
+        // 4. Logique de gestion des messages sortants (ce que le serveur envoie), avec un tampon borné
+        Flux<WebSocketMessage> output = room.subscribe(policy, bufferSize, dropped -> droppedMessages.increment())
+                .map(messageJson -> ChatFrames.textMessage(session.bufferFactory(), messageJson))
+                .onErrorResume(Exceptions::isOverflow, e -> {
+                    logger.warn("Client trop lent sur l'intervention {} : fermeture de la session {}", interventionId, session.getId());
+                    disconnectedSubscribers.increment();
+                    return session.close(CloseStatus.SERVICE_OVERLOAD).then(Mono.empty());
+                });
 
         // 5. On combine les deux logiques. La connexion reste ouverte tant que les deux flux sont actifs.
-        return Mono.zip(input, session.send(output)).then();
+        return Mono.zip(input, session.send(output)).then()
+                .doFinally(signal -> leaveRoom(room));
     }
 
     /**
      * Méthode publique pour qu'un service externe (ex: ChatService) puisse injecter un message.
      */
-    public void sendMessage(Long interventionId, Object messageObject) {
-        Sinks.Many<String> sink = chatRooms.get(interventionId);
-        if (sink != null) {
-            try {
-                String messageJson = objectMapper.writeValueAsString(messageObject);
-                logger.info("Envoi d'un message système à l'intervention {}: {}", interventionId, messageJson);
-                sink.tryEmitNext(messageJson);
-            } catch (Exception e) {
-                logger.error("Erreur de sérialisation du message pour l'intervention {}", interventionId, e);
+    public void sendMessage(Long interventionId, Message message) {
+        byte[] messageJson;
+        try {
+            // Sérialisé une seule fois : les mêmes octets servent aux abonnés locaux et aux autres instances
+            messageJson = ChatFrames.encode(objectMapper, interventionId, message);
+        } catch (Exception e) {
+            logger.error("Erreur de sérialisation du message pour l'intervention {}", interventionId, e);
+            return;
+        }
+        logger.info("Diffusion d'un message {} {}", kv("interventionId", interventionId), kv("messageId", message.getId()));
+        ChatRoom room = chatRooms.get(interventionId);
+        if (room != null) {
+            recordEmit(room.emit(messageJson));
+        }
+        // Les clients connectés à d'autres instances reçoivent le message via Redis
+        clusterRelay.publish(interventionId, messageJson).subscribe();
+    }
+
+    /**
+     * Compte les diffusions locales refusées par le salon (salon fermé, tampon plein...).
+     * Un salon sans abonné n'est pas une erreur : le message reste disponible via l'historique.
+     */
+    private void recordEmit(Sinks.EmitResult result) {
+        if (result.isSuccess() || result == Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            return;
+        }
+        Counter.builder("chat.rooms.emit.failures")
+                .description("Messages non diffusés aux abonnés locaux d'un salon")
+                .tag("result", result.name())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Définit la politique appliquée aux prochains clients d'un salon ({@code null} pour revenir à la valeur par défaut).
+     * Les clients déjà connectés conservent la politique en vigueur à leur connexion.
+     */
+    public void setSlowConsumerPolicy(Long interventionId, SlowConsumerPolicy policy) {
+        if (policy == null) {
+            policyOverrides.remove(interventionId);
+        } else {
+            policyOverrides.put(interventionId, policy);
+        }
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy(Long interventionId) {
+        return policyOverrides.getOrDefault(interventionId, defaultPolicy);
+    }
+
+    private ChatRoom joinRoom(Long interventionId) {
+        // compute() sérialise inscriptions, départs et évictions d'un même salon
+        return chatRooms.compute(interventionId, (id, existing) -> {
+            ChatRoom room = existing;
+            if (room == null) {
+                room = new ChatRoom(id);
+                // Abonnement Redis uniquement pour les salons ayant des clients sur cette instance
+                room.attachRelay(clusterRelay.subscribe(id));
+            }
+            room.join();
+            return room;
+        });
+    }
+
+    private void leaveRoom(ChatRoom room) {
+        chatRooms.computeIfPresent(room.interventionId(), (id, current) -> {
+            if (current == room && room.leave() == 0) {
+                room.scheduleEviction(Mono.delay(evictionGracePeriod).subscribe(tick -> evictIfIdle(room)));
+            }
+            return current;
+        });
+    }
+
+    private void evictIfIdle(ChatRoom room) {
+        boolean[] evicted = {false};
+        chatRooms.computeIfPresent(room.interventionId(), (id, current) -> {
+            if (current == room && room.subscriberCount() == 0) {
+                evicted[0] = true;
+                return null;
             }
+            return current;
+        });
+        if (evicted[0]) {
+            room.close();
+            evictedRooms.increment();
+            logger.debug("Salon de l'intervention {} supprimé (aucun client depuis {})", room.interventionId(), evictionGracePeriod);
         }
     }
 
@@ -84,4 +228,4 @@ public class ChatWebSocketHandler implements WebSocketHandler {
             return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,9 @@
+package com.eneo.support.service;
+
+/**
+ * Sort des plans calculés périodiquement par {@link DispatchService}.
+ */
+public enum DispatchMode {
+    PROPOSE, // Le plan est conservé et proposé à l'administrateur, qui l'approuve en un clic
+    AUTO     // Le plan est appliqué dès qu'il est calculé
+}
@@ -0,0 +1,254 @@
+package com.eneo.support.service;
+
+import com.eneo.support.dto.DispatchApplyResponse;
+import com.eneo.support.dto.DispatchAssignment;
+import com.eneo.support.dto.DispatchPlanResponse;
+import com.eneo.support.model.InterventionStatus;
+import com.eneo.support.repository.AgentRepository;
+import com.eneo.support.repository.AgentWorkload;
+import com.eneo.support.repository.InterventionDispatchRef;
+import com.eneo.support.repository.InterventionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Moteur de dispatch : affecte en lot les interventions NOUVEAU aux agents disponibles et en ligne.
+ * Le coût d'un couple est la distance (km) plus une pénalité par intervention déjà en cours pour l'agent ;
+ * les couples au-delà de {@code dispatch.max-distance-km} sont interdits. Chaque agent reçoit au plus
+ * une intervention par plan : sa charge est réévaluée au plan suivant.
+ * Selon {@code dispatch.mode}, le plan calculé périodiquement est proposé à l'administrateur ou appliqué directement.
+ */
+@Service
+public class DispatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DispatchService.class);
+    private static final double KM_PER_DEGREE_LATITUDE = 111.195;
+
+    private final InterventionRepository interventionRepository;
+    private final AgentRepository agentRepository;
+    private final AgentSpatialIndex spatialIndex;
+    private final InterventionService interventionService;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final DispatchMode mode;
+    private final int maxInterventions;
+    private final double maxDistanceKm;
+    private final double workloadPenaltyKm;
+    private final int hungarianMaxSize;
+    private final int candidatesPerIntervention;
+    private final int maxImprovementPasses;
+
+    // Dernier plan en attente d'approbation (mode PROPOSE, ou calcul demandé par l'administrateur)
+    private final AtomicReference<DispatchPlanResponse> proposal = new AtomicReference<>();
+    private final Counter appliedAssignments;
+    private final Counter skippedAssignments;
+
+    public DispatchService(InterventionRepository interventionRepository,
+                           AgentRepository agentRepository,
+                           AgentSpatialIndex spatialIndex,
+                           InterventionService interventionService,
+                           MeterRegistry meterRegistry,
+                           @Value("${dispatch.enabled:false}") boolean enabled,
+                           @Value("${dispatch.mode:PROPOSE}") DispatchMode mode,
+                           @Value("${dispatch.max-interventions:500}") int maxInterventions,
+                           @Value("${dispatch.max-distance-km:50}") double maxDistanceKm,
+                           @Value("${dispatch.workload-penalty-km:5}") double workloadPenaltyKm,
+                           @Value("${dispatch.hungarian-max-size:500}") int hungarianMaxSize,
+                           @Value("${dispatch.candidates-per-intervention:16}") int candidatesPerIntervention,
+                           @Value("${dispatch.max-improvement-passes:20}") int maxImprovementPasses) {
+        this.interventionRepository = interventionRepository;
+        this.agentRepository = agentRepository;
+        this.spatialIndex = spatialIndex;
+        this.interventionService = interventionService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.mode = mode;
+        this.maxInterventions = maxInterventions;
+        this.maxDistanceKm = maxDistanceKm;
+        this.workloadPenaltyKm = workloadPenaltyKm;
+        this.hungarianMaxSize = hungarianMaxSize;
+        this.candidatesPerIntervention = candidatesPerIntervention;
+        this.maxImprovementPasses = maxImprovementPasses;
+        this.appliedAssignments = Counter.builder("dispatch.assignments")
+                .description("Affectations du moteur de dispatch")
+                .tag("outcome", "applied")
+                .register(meterRegistry);
+        this.skippedAssignments = Counter.builder("dispatch.assignments")
+                .description("Affectations du moteur de dispatch")
+                .tag("outcome", "skipped")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${dispatch.interval-ms:60000}", initialDelayString = "${dispatch.interval-ms:60000}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        DispatchPlanResponse plan = computePlan();
+        if (plan.getAssignments().isEmpty()) {
+            return;
+        }
+        if (mode == DispatchMode.AUTO) {
+            DispatchApplyResponse result = apply(plan);
+            logger.info("Dispatch automatique : {} affectation(s) appliquée(s), {} ignorée(s)",
+                    result.getApplied().size(), result.getSkippedInterventionIds().size());
+        } else {
+            proposal.set(plan);
+            logger.info("Dispatch : plan {} proposé ({} affectation(s))", plan.getPlanId(), plan.getAssignments().size());
+        }
+    }
+
+    /**
+     * Calcule un plan sur les interventions NOUVEAU (les plus anciennes d'abord, au plus {@code dispatch.max-interventions})
+     * et les agents disponibles et en ligne. Le plan n'est pas appliqué.
+     */
+    public synchronized DispatchPlanResponse computePlan() {
+        Instant now = Instant.now();
+        List<InterventionDispatchRef> interventions = interventionRepository.findDispatchRefsByStatus(
+                InterventionStatus.NOUVEAU, Limit.of(maxInterventions));
+
+        List<AgentSpatialIndex.Entry> agents = new ArrayList<>();
+        if (!interventions.isEmpty()) {
+            for (Long agentId : agentRepository.findAvailableIds()) {
+                AgentSpatialIndex.Entry entry = spatialIndex.get(agentId);
+                if (entry != null && spatialIndex.isOnline(entry, now)) {
+                    agents.add(entry);
+                }
+            }
+        }
+        Map<Long, Long> workload = new HashMap<>();
+        if (!agents.isEmpty()) {
+            for (AgentWorkload agentWorkload : interventionRepository.countByAssignedAgent(InterventionStatus.ASSIGNE)) {
+                workload.put(agentWorkload.getAgentId(), agentWorkload.getActiveInterventions());
+            }
+        }
+
+        long start = System.nanoTime();
+        double[][] cost = costMatrix(interventions, agents, workload);
+        int[] assignment = DispatchSolver.solve(cost, agents.size(), hungarianMaxSize, candidatesPerIntervention, maxImprovementPasses);
+        long solveNanos = System.nanoTime() - start;
+        String solver = DispatchSolver.usesHungarian(interventions.size(), agents.size(), hungarianMaxSize) ? "hungarian" : "greedy";
+        Timer.builder("dispatch.solve")
+                .description("Calcul d'un plan de dispatch (matrice des coûts et affectation)")
+                .tag("solver", solver)
+                .register(meterRegistry)
+                .record(solveNanos, TimeUnit.NANOSECONDS);
+
+        List<DispatchAssignment> assignments = new ArrayList<>();
+        List<Long> unassigned = new ArrayList<>();
+        double totalCost = 0;
+        for (int i = 0; i < interventions.size(); i++) {
+            InterventionDispatchRef intervention = interventions.get(i);
+            if (assignment[i] < 0) {
+                unassigned.add(intervention.getId());
+                continue;
+            }
+            AgentSpatialIndex.Entry agent = agents.get(assignment[i]);
+            double distance = AgentSpatialIndex.haversineKm(intervention.getLatitude(), intervention.getLongitude(),
+                    agent.latitude(), agent.longitude());
+            totalCost += cost[i][assignment[i]];
+            assignments.add(new DispatchAssignment(intervention.getId(), agent.agentId(), distance,
+                    workload.getOrDefault(agent.agentId(), 0L), cost[i][assignment[i]]));
+        }
+        logger.debug("Plan de dispatch : {} interventions, {} agents, {} affectations ({}, {} ms)",
+                interventions.size(), agents.size(), assignments.size(), solver, solveNanos / 1_000_000);
+        return new DispatchPlanResponse(UUID.randomUUID().toString(), now, solver, interventions.size(), agents.size(),
+                solveNanos / 1_000_000d, totalCost, assignments, unassigned);
+    }
+
+    /**
+     * Coût de chaque couple (intervention, agent) ; infini au-delà de la distance maximale.
+     */
+    private double[][] costMatrix(List<InterventionDispatchRef> interventions, List<AgentSpatialIndex.Entry> agents,
+                                  Map<Long, Long> workload) {
+        double[] penalty = new double[agents.size()];
+        for (int j = 0; j < agents.size(); j++) {
+            penalty[j] = workloadPenaltyKm * workload.getOrDefault(agents.get(j).agentId(), 0L);
+        }
+        // Filtre sur l'écart de latitude seul, sans trigonométrie, avant le calcul exact de la distance
+        double maxLatitudeDelta = maxDistanceKm / KM_PER_DEGREE_LATITUDE;
+        double[][] cost = new double[interventions.size()][agents.size()];
+        for (int i = 0; i < interventions.size(); i++) {
+            InterventionDispatchRef intervention = interventions.get(i);
+            double[] row = cost[i];
+            for (int j = 0; j < agents.size(); j++) {
+                AgentSpatialIndex.Entry agent = agents.get(j);
+                if (Math.abs(agent.latitude() - intervention.getLatitude()) > maxLatitudeDelta) {
+                    row[j] = Double.POSITIVE_INFINITY;
+                    continue;
+                }
+                double distance = AgentSpatialIndex.haversineKm(intervention.getLatitude(), intervention.getLongitude(),
+                        agent.latitude(), agent.longitude());
+                row[j] = distance > maxDistanceKm ? Double.POSITIVE_INFINITY : distance + penalty[j];
+            }
+        }
+        return cost;
+    }
+
+    public Optional<DispatchPlanResponse> getProposal() {
+        return Optional.ofNullable(proposal.get());
+    }
+
+    /**
+     * Calcule un plan à la demande de l'administrateur ; il remplace la proposition en attente.
+     */
+    public DispatchPlanResponse propose() {
+        DispatchPlanResponse plan = computePlan();
+        proposal.set(plan);
+        return plan;
+    }
+
+    /**
+     * Applique la proposition en attente si elle correspond à {@code planId} (approbation en un clic).
+     * @return vide si la proposition n'existe plus ou a été remplacée par un plan plus récent.
+     */
+    public Optional<DispatchApplyResponse> approve(String planId) {
+        DispatchPlanResponse plan = proposal.get();
+        if (plan == null || !plan.getPlanId().equals(planId) || !proposal.compareAndSet(plan, null)) {
+            return Optional.empty();
+        }
+        return Optional.of(apply(plan));
+    }
+
+    private DispatchApplyResponse apply(DispatchPlanResponse plan) {
+        List<DispatchAssignment> applied = new ArrayList<>();
+        List<Long> skipped = new ArrayList<>();
+        for (DispatchAssignment assignment : plan.getAssignments()) {
+            boolean assigned;
+            try {
+                // Une transaction par intervention : un échec n'annule pas les autres affectations du plan
+                assigned = interventionService.assignAgentsIfNew(assignment.getInterventionId(), List.of(assignment.getAgentId())).isPresent();
+            } catch (RuntimeException e) {
+                logger.warn("Affectation de l'agent {} à l'intervention {} impossible: {}",
+                        assignment.getAgentId(), assignment.getInterventionId(), e.getMessage());
+                assigned = false;
+            }
+            if (assigned) {
+                applied.add(assignment);
+            } else {
+                skipped.add(assignment.getInterventionId());
+            }
+        }
+        appliedAssignments.increment(applied.size());
+        skippedAssignments.increment(skipped.size());
+        return new DispatchApplyResponse(plan.getPlanId(), applied, skipped);
+    }
+}
@@ -0,0 +1,252 @@
+package com.eneo.support.service;
+
+import java.util.Arrays;
+
+/**
+ * Affectation de coût minimal entre interventions (lignes) et agents (colonnes), un agent par intervention au plus.
+ * Un coût infini ({@link Double#POSITIVE_INFINITY}) interdit le couple.
+ * Petits lots : algorithme hongrois, optimal, en O(n²·m) avec n = min(lignes, colonnes).
+ * Grands lots : glouton sur les meilleurs candidats de chaque ligne, puis amélioration locale
+ * (déplacement vers un agent libre moins coûteux, échange d'agents entre deux interventions).
+ */
+final class DispatchSolver {
+
+    // Substitut fini des coûts infinis pour l'algorithme hongrois ; les couples à ce coût sont ensuite écartés
+    private static final double FORBIDDEN = 1e12;
+    private static final double EPSILON = 1e-9;
+
+    private DispatchSolver() {
+    }
+
+    /**
+     * @param hungarianMaxSize taille maximale (min(lignes, colonnes)) traitée par l'algorithme hongrois.
+     * @return pour chaque ligne, l'indice de la colonne affectée, ou -1.
+     */
+    static int[] solve(double[][] cost, int columns, int hungarianMaxSize, int candidatesPerRow, int maxImprovementPasses) {
+        if (usesHungarian(cost.length, columns, hungarianMaxSize)) {
+            return hungarian(cost, columns);
+        }
+        int[] assignment = greedy(cost, columns, candidatesPerRow);
+        improve(cost, columns, assignment, maxImprovementPasses);
+        return assignment;
+    }
+
+    static boolean usesHungarian(int rows, int columns, int hungarianMaxSize) {
+        return Math.min(rows, columns) <= hungarianMaxSize;
+    }
+
+    /**
+     * Algorithme hongrois (potentiels et chemins augmentants). Si les lignes sont plus nombreuses que les colonnes,
+     * on résout le problème transposé.
+     */
+    static int[] hungarian(double[][] cost, int columns) {
+        int rows = cost.length;
+        int[] assignment = new int[rows];
+        Arrays.fill(assignment, -1);
+        if (rows == 0 || columns == 0) {
+            return assignment;
+        }
+        boolean transposed = rows > columns;
+        int n = transposed ? columns : rows;
+        int m = transposed ? rows : columns;
+
+        // Indices à partir de 1, la colonne 0 sert de sentinelle
+        double[] u = new double[n + 1];
+        double[] v = new double[m + 1];
+        int[] owner = new int[m + 1];
+        int[] way = new int[m + 1];
+        double[] minSlack = new double[m + 1];
+        boolean[] visited = new boolean[m + 1];
+        for (int i = 1; i <= n; i++) {
+            owner[0] = i;
+            int column = 0;
+            Arrays.fill(minSlack, Double.MAX_VALUE);
+            Arrays.fill(visited, false);
+            do {
+                visited[column] = true;
+                int row = owner[column];
+                double delta = Double.MAX_VALUE;
+                int next = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (visited[j]) {
+                        continue;
+                    }
+                    double c = transposed ? cost[j - 1][row - 1] : cost[row - 1][j - 1];
+                    double slack = (Double.isInfinite(c) ? FORBIDDEN : c) - u[row] - v[j];
+                    if (slack < minSlack[j]) {
+                        minSlack[j] = slack;
+                        way[j] = column;
+                    }
+                    if (minSlack[j] < delta) {
+                        delta = minSlack[j];
+                        next = j;
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (visited[j]) {
+                        u[owner[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minSlack[j] -= delta;
+                    }
+                }
+                column = next;
+            } while (owner[column] != 0);
+            do {
+                int previous = way[column];
+                owner[column] = owner[previous];
+                column = previous;
+            } while (column != 0);
+        }
+
+        for (int j = 1; j <= m; j++) {
+            if (owner[j] == 0) {
+                continue;
+            }
+            int row = transposed ? j - 1 : owner[j] - 1;
+            int col = transposed ? owner[j] - 1 : j - 1;
+            if (!Double.isInfinite(cost[row][col])) {
+                assignment[row] = col;
+            }
+        }
+        return assignment;
+    }
+
+    /**
+     * Glouton : les {@code candidatesPerRow} meilleurs agents de chaque intervention sont triés par coût croissant
+     * et retenus tant que l'intervention et l'agent sont libres. Une intervention restée sans agent prend ensuite
+     * le moins coûteux des agents encore libres.
+     */
+    static int[] greedy(double[][] cost, int columns, int candidatesPerRow) {
+        int rows = cost.length;
+        int k = Math.max(1, Math.min(candidatesPerRow, columns));
+        int[] candidateRows = new int[rows * k];
+        int[] candidateCols = new int[rows * k];
+        double[] candidateCosts = new double[rows * k];
+        int count = 0;
+
+        int[] bestCols = new int[k];
+        double[] bestCosts = new double[k];
+        for (int i = 0; i < rows; i++) {
+            int size = 0;
+            double[] row = cost[i];
+            for (int j = 0; j < columns; j++) {
+                double c = row[j];
+                if (Double.isInfinite(c) || (size == k && c >= bestCosts[k - 1])) {
+                    continue;
+                }
+                // Insertion dans la liste triée des k meilleurs
+                int position = size < k ? size++ : k - 1;
+                while (position > 0 && bestCosts[position - 1] > c) {
+                    bestCosts[position] = bestCosts[position - 1];
+                    bestCols[position] = bestCols[position - 1];
+                    position--;
+                }
+                bestCosts[position] = c;
+                bestCols[position] = j;
+            }
+            for (int s = 0; s < size; s++) {
+                candidateRows[count] = i;
+                candidateCols[count] = bestCols[s];
+                candidateCosts[count] = bestCosts[s];
+                count++;
+            }
+        }
+
+        Integer[] order = new Integer[count];
+        for (int p = 0; p < count; p++) {
+            order[p] = p;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(candidateCosts[a], candidateCosts[b]));
+
+        int[] assignment = new int[rows];
+        Arrays.fill(assignment, -1);
+        boolean[] used = new boolean[columns];
+        for (Integer p : order) {
+            int i = candidateRows[p];
+            int j = candidateCols[p];
+            if (assignment[i] < 0 && !used[j]) {
+                assignment[i] = j;
+                used[j] = true;
+            }
+        }
+        for (int i = 0; i < rows; i++) {
+            if (assignment[i] < 0) {
+                int j = cheapestFree(cost[i], columns, used);
+                if (j >= 0) {
+                    assignment[i] = j;
+                    used[j] = true;
+                }
+            }
+        }
+        return assignment;
+    }
+
+    /**
+     * Amélioration locale jusqu'à stabilité (ou {@code maxPasses} passes) : chaque intervention peut passer
+     * à un agent libre moins coûteux, et deux interventions peuvent échanger leurs agents si le coût total baisse.
+     */
+    static void improve(double[][] cost, int columns, int[] assignment, int maxPasses) {
+        boolean[] used = new boolean[columns];
+        for (int j : assignment) {
+            if (j >= 0) {
+                used[j] = true;
+            }
+        }
+        for (int pass = 0; pass < maxPasses; pass++) {
+            boolean improved = false;
+            for (int i = 0; i < assignment.length; i++) {
+                int current = assignment[i];
+                int j = cheapestFree(cost[i], columns, used);
+                if (j >= 0 && (current < 0 || cost[i][j] < cost[i][current] - EPSILON)) {
+                    if (current >= 0) {
+                        used[current] = false;
+                    }
+                    assignment[i] = j;
+                    used[j] = true;
+                    improved = true;
+                }
+            }
+            for (int a = 0; a < assignment.length; a++) {
+                for (int b = a + 1; b < assignment.length; b++) {
+                    int ja = assignment[a];
+                    int jb = assignment[b];
+                    if (ja < 0 || jb < 0) {
+                        continue;
+                    }
+                    double swapped = cost[a][jb] + cost[b][ja];
+                    if (swapped < cost[a][ja] + cost[b][jb] - EPSILON) {
+                        assignment[a] = jb;
+                        assignment[b] = ja;
+                        improved = true;
+                    }
+                }
+            }
+            if (!improved) {
+                return;
+            }
+        }
+    }
+
+    static double totalCost(double[][] cost, int[] assignment) {
+        double total = 0;
+        for (int i = 0; i < assignment.length; i++) {
+            if (assignment[i] >= 0) {
+                total += cost[i][assignment[i]];
+            }
+        }
+        return total;
+    }
+
+    private static int cheapestFree(double[] row, int columns, boolean[] used) {
+        int best = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < columns; j++) {
+            if (!used[j] && row[j] < bestCost) {
+                bestCost = row[j];
+                best = j;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,9 @@
+package com.eneo.support.service;
+
+/**
+ * Mode de création d'une intervention au premier message d'un client.
+ */
+public enum InterventionCreationMode {
+    SYNC,       // Le ticket Zammad est créé avant d'enregistrer l'intervention : le client attend Zammad
+    LOCAL_FIRST // L'intervention est enregistrée et confirmée immédiatement ; le ticket est créé en arrière-plan
+}
@@ -1,20 +1,27 @@
 package com.eneo.support.service;
 
+import com.eneo.support.dto.CursorPage;
+import com.eneo.support.dto.InterventionSearchCriteria;
+import com.eneo.support.dto.InterventionSummaryResponse;
 import com.eneo.support.dto.InterventionUpdateRequest;
+import com.eneo.support.dto.MessageResponse;
 import com.eneo.support.dto.AssignAgentsRequest; // Assurez-vous d'avoir ce DTO
 import com.eneo.support.model.Agent;
 import com.eneo.support.model.Intervention;
 import com.eneo.support.model.InterventionStatus;
-import com.eneo.support.model.Message;
 import com.eneo.support.model.SenderType;
 import com.eneo.support.repository.AgentRepository;
+import com.eneo.support.repository.InterventionLocation;
 import com.eneo.support.repository.InterventionRepository;
+import com.eneo.support.repository.MessageRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -26,7 +33,8 @@ public class InterventionService {
     private static final Logger logger = LoggerFactory.getLogger(InterventionService.class);
     private final InterventionRepository interventionRepository;
     private final AgentRepository agentRepository;
-    private final ZammadService zammadService;
+    private final MessageRepository messageRepository;
+    private final ZammadOutbox zammadOutbox;
     private final ChatService chatService;
 
     private static final int ZAMMAD_STATE_PENDING = 2;
@@ -34,11 +42,13 @@ public class InterventionService {
 
     public InterventionService(InterventionRepository interventionRepository,
                                AgentRepository agentRepository,
-                               ZammadService zammadService,
+                               MessageRepository messageRepository,
+                               ZammadOutbox zammadOutbox,
                                @Lazy ChatService chatService) {
         this.interventionRepository = interventionRepository;
         this.agentRepository = agentRepository;
-        this.zammadService = zammadService;
+        this.messageRepository = messageRepository;
+        this.zammadOutbox = zammadOutbox;
         this.chatService = chatService;
     }
 
@@ -46,6 +56,35 @@ public class InterventionService {
         return interventionRepository.findAll();
     }
 
+    /**
+     * Récupère uniquement les coordonnées d'une intervention, sans charger l'entité ni ses agents.
+     */
+    public Optional<InterventionLocation> getInterventionLocation(Long interventionId) {
+        return interventionRepository.findLocationById(interventionId);
+    }
+
+    /**
+     * Recherche paginée par curseur des interventions, sous forme de résumés construits en une seule requête.
+     * @param cursor Curseur renvoyé par la page précédente (null pour la première page).
+     * @param limit Nombre maximum d'éléments dans la page.
+     * @throws IllegalArgumentException si le curseur est invalide.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<InterventionSummaryResponse> searchInterventions(InterventionSearchCriteria criteria, String cursor, int limit) {
+        KeysetCursor after = cursor != null && !cursor.isBlank() ? KeysetCursor.decode(cursor) : null;
+        // Un élément de plus que demandé pour savoir s'il existe une page suivante
+        List<InterventionSummaryResponse> items = interventionRepository.searchSummaries(criteria,
+                after != null ? after.timestamp() : null, after != null ? after.id() : null, limit + 1);
+
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            InterventionSummaryResponse last = items.get(limit - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(items, nextCursor);
+    }
+
     @Transactional
     public Optional<Intervention> updateIntervention(Long interventionId, InterventionUpdateRequest request) {
         return interventionRepository.findById(interventionId).map(intervention -> {
@@ -68,10 +107,8 @@ public class InterventionService {
 
             Intervention updatedIntervention = interventionRepository.save(intervention);
 
-            zammadService.updateTicketState(intervention.getZammadTicketId(), ZAMMAD_STATE_PENDING)
-                    .doOnSuccess(v -> logger.info("Ticket Zammad {} mis à jour en état 'pending'.", intervention.getZammadTicketId()))
-                    .doOnError(error -> logger.error("Échec de la mise à jour du ticket Zammad {}: {}", intervention.getZammadTicketId(), error.getMessage()))
-                    .subscribe();
+            // Envoyé à Zammad après validation de la transaction, via l'outbox
+            zammadOutbox.enqueueTicketState(intervention, ZAMMAD_STATE_PENDING);
 
             String agentIdList = agentIds.stream().map(String::valueOf).collect(Collectors.joining(", "));
             logger.info("ACTION REQUISE : Envoyer une notification Push aux agents [{}] pour l'intervention {}", agentIdList, interventionId);
@@ -80,16 +117,24 @@ public class InterventionService {
         });
     }
 
+    /**
+     * Affectation décidée par le moteur de dispatch : appliquée seulement si l'intervention est toujours NOUVEAU,
+     * pour ne pas écraser une affectation faite à la main entre le calcul et l'application du plan.
+     */
+    @Transactional
+    public Optional<Intervention> assignAgentsIfNew(Long interventionId, List<Long> agentIds) {
+        return interventionRepository.findById(interventionId)
+                .filter(intervention -> intervention.getStatus() == InterventionStatus.NOUVEAU)
+                .flatMap(intervention -> assignAgentsToIntervention(interventionId, agentIds));
+    }
+
     @Transactional
     public Optional<Intervention> resolveIntervention(Long interventionId) {
         return interventionRepository.findById(interventionId).map(intervention -> {
             intervention.setStatus(InterventionStatus.RESOLU);
             Intervention updatedIntervention = interventionRepository.save(intervention);
 
-            zammadService.updateTicketState(intervention.getZammadTicketId(), ZAMMAD_STATE_CLOSED)
-                    .doOnSuccess(v -> logger.info("Ticket Zammad {} a été fermé avec succès.", intervention.getZammadTicketId()))
-                    .doOnError(error -> logger.error("Échec de la fermeture du ticket Zammad {}: {}", intervention.getZammadTicketId(), error.getMessage()))
-                    .subscribe();
+            zammadOutbox.enqueueTicketState(intervention, ZAMMAD_STATE_CLOSED);
 
             logger.info("Intervention {} marquée comme résolue.", interventionId);
 
@@ -97,10 +142,30 @@ public class InterventionService {
         });
     }
 
-    public List<Message> getMessagesForIntervention(Long interventionId) {
-        return interventionRepository.findById(interventionId)
-                .map(Intervention::getMessages)
-                .orElse(Collections.emptyList());
+    /**
+     * Page de l'historique d'une conversation, lue directement dans la table des messages.
+     * Les messages de la page sont renvoyés dans l'ordre chronologique ; {@code nextCursor}
+     * permet de remonter vers les messages plus anciens.
+     * @param before Curseur renvoyé par la page précédente (null pour les messages les plus récents).
+     * @throws IllegalArgumentException si le curseur est invalide.
+     */
+    public CursorPage<MessageResponse> getMessagesPage(Long interventionId, String before, int limit) {
+        KeysetCursor cursor = before != null && !before.isBlank() ? KeysetCursor.decode(before) : null;
+        // Un élément de plus que demandé pour savoir s'il existe des messages plus anciens
+        Limit fetchLimit = Limit.of(limit + 1);
+        List<MessageResponse> newestFirst = cursor == null
+                ? messageRepository.findLatest(interventionId, fetchLimit)
+                : messageRepository.findBefore(interventionId, cursor.timestamp(), cursor.id(), fetchLimit);
+
+        String nextCursor = null;
+        if (newestFirst.size() > limit) {
+            newestFirst = newestFirst.subList(0, limit);
+            MessageResponse oldest = newestFirst.get(limit - 1);
+            nextCursor = new KeysetCursor(oldest.getTimestamp(), oldest.getId()).encode();
+        }
+        List<MessageResponse> chronological = new ArrayList<>(newestFirst);
+        Collections.reverse(chronological);
+        return new CursorPage<>(chronological, nextCursor);
     }
 
     public void postMessageFromAdmin(Long interventionId, String content) {
@@ -0,0 +1,193 @@
+package com.eneo.support.service;
+
+import com.eneo.support.model.Message;
+import com.eneo.support.model.SenderType;
+import com.eneo.support.repository.InterventionRepository;
+import com.eneo.support.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Écriture groupée ("group commit") des messages de chat.
+ * Les messages reçus pendant une courte fenêtre sont insérés dans une seule transaction, en un batch JDBC
+ * (identifiants issus de {@code messages_seq}, voir {@link Message}). Chaque appelant est notifié après le commit,
+ * puis son message est diffusé sur le chat. Si le lot échoue, ses messages sont réécrits un par un :
+ * seul le message fautif est alors en erreur. Si le pipeline d'écriture s'arrête, les messages en attente
+ * et les suivants sont en erreur au lieu de rester sans réponse.
+ */
+@Component
+public class MessageBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageBatchWriter.class);
+    private static final Duration EMIT_RETRY = Duration.ofSeconds(1);
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * @param span étape de la trace de l'appelant, null hors trace.
+     */
+    private record PendingMessage(Long interventionId, String content, SenderType senderType, MonoSink<Message> caller,
+                                  RequestTracer.Span span, long enqueuedAtNanos) {
+    }
+
+    private final InterventionRepository interventionRepository;
+    private final MessageRepository messageRepository;
+    private final ChatWebSocketHandler webSocketHandler;
+    private final TransactionTemplate transactionTemplate;
+    private final RequestTracer tracer;
+
+    // Plusieurs threads y publient : emitNext avec busyLooping sérialise les émissions concurrentes
+    private final Sinks.Many<PendingMessage> queue = Sinks.many().unicast().onBackpressureBuffer();
+    private final CompletableFuture<Void> pipeline;
+
+    private final DistributionSummary batchSize;
+    private final Counter batchFailures;
+
+    public MessageBatchWriter(InterventionRepository interventionRepository,
+                              MessageRepository messageRepository,
+                              @Lazy ChatWebSocketHandler webSocketHandler,
+                              PlatformTransactionManager transactionManager,
+                              Scheduler persistenceScheduler,
+                              MeterRegistry meterRegistry,
+                              RequestTracer tracer,
+                              @Value("${chat.messages.write-window:PT0.005S}") Duration writeWindow,
+                              @Value("${chat.messages.max-batch-size:50}") int maxBatchSize) {
+        this.interventionRepository = interventionRepository;
+        this.messageRepository = messageRepository;
+        this.webSocketHandler = webSocketHandler;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tracer = tracer;
+        this.batchSize = DistributionSummary.builder("chat.messages.batch.size")
+                .description("Nombre de messages insérés par transaction")
+                .register(meterRegistry);
+        this.batchFailures = Counter.builder("chat.messages.batch.failures")
+                .register(meterRegistry);
+
+        // Un lot à la fois : les messages d'une conversation restent écrits et diffusés dans l'ordre de réception.
+        // bufferTimeout équitable : un lot prêt attend la fin de l'écriture précédente au lieu de faire échouer le flux.
+        this.pipeline = queue.asFlux()
+                .bufferTimeout(maxBatchSize, writeWindow, true)
+                .concatMap(batch -> Mono.fromRunnable(() -> writeBatch(batch))
+                        .subscribeOn(persistenceScheduler)
+                        .onErrorResume(error -> {
+                            logger.error("Erreur inattendue lors de l'écriture d'un lot de messages: ", error);
+                            return Mono.empty();
+                        }))
+                // Messages abandonnés par le flux (arrêt sur erreur) : l'appelant est prévenu
+                .doOnDiscard(PendingMessage.class, pending -> pending.caller().error(
+                        new IllegalStateException("Écriture des messages interrompue")))
+                .then()
+                .toFuture();
+        this.pipeline.whenComplete((ignored, error) -> {
+            if (error != null) {
+                logger.error("Arrêt du pipeline d'écriture des messages : les nouveaux messages seront refusés", error);
+            }
+        });
+    }
+
+    /**
+     * Ajoute un message à une intervention.
+     * L'attente du lot, l'insertion et la diffusion sont ajoutées comme étapes à la trace de l'appelant.
+     * @return le message enregistré, émis une fois la transaction de son lot validée.
+     */
+    public Mono<Message> append(Long interventionId, String content, SenderType senderType) {
+        if (pipeline.isDone()) {
+            return Mono.error(new IllegalStateException("Écriture des messages arrêtée"));
+        }
+        return Mono.create(caller -> queue.emitNext(new PendingMessage(interventionId, content, senderType, caller,
+                        tracer.current(caller.contextView()), System.nanoTime()),
+                Sinks.EmitFailureHandler.busyLooping(EMIT_RETRY)));
+    }
+
+    private void writeBatch(List<PendingMessage> batch) {
+        long startNanos = System.nanoTime();
+        for (PendingMessage pending : batch) {
+            tracer.record(pending.span(), "chat.batch.wait", pending.enqueuedAtNanos(), startNanos, false);
+        }
+        write(batch);
+    }
+
+    private void write(List<PendingMessage> batch) {
+        long startNanos = System.nanoTime();
+        List<Message> saved;
+        try {
+            saved = transactionTemplate.execute(status -> messageRepository.saveAll(toMessages(batch)));
+        } catch (RuntimeException e) {
+            long endNanos = System.nanoTime();
+            batch.forEach(pending -> tracer.record(pending.span(), "db.insert_messages", startNanos, endNanos, true));
+            batchFailures.increment();
+            if (batch.size() == 1) {
+                batch.get(0).caller().error(e);
+                return;
+            }
+            logger.warn("Échec de l'écriture d'un lot de {} messages, nouvel essai message par message: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> write(List.of(pending)));
+            return;
+        }
+        batchSize.record(batch.size());
+        long committedNanos = System.nanoTime();
+
+        for (int i = 0; i < batch.size(); i++) {
+            Message message = saved.get(i);
+            PendingMessage pending = batch.get(i);
+            tracer.record(pending.span(), "db.insert_messages", startNanos, committedNanos, false);
+            // Diffusion avant la réponse : la latence mesurée côté ChatService inclut l'émission vers les salons.
+            // Le message est enregistré : un échec de diffusion ne doit pas priver l'appelant de sa réponse.
+            long sendNanos = System.nanoTime();
+            boolean sent = false;
+            try {
+                webSocketHandler.sendMessage(pending.interventionId(), message);
+                sent = true;
+            } catch (RuntimeException e) {
+                logger.warn("Échec de la diffusion du message {} de l'intervention {}: {}", message.getId(), pending.interventionId(), e.getMessage());
+            } finally {
+                tracer.record(pending.span(), "websocket.send", sendNanos, System.nanoTime(), !sent);
+                pending.caller().success(message);
+            }
+        }
+    }
+
+    private List<Message> toMessages(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            Message message = new Message();
+            message.setContent(pending.content());
+            message.setSenderType(pending.senderType());
+            // Simple référence : l'INSERT n'a besoin que de l'identifiant de l'intervention
+            message.setIntervention(interventionRepository.getReferenceById(pending.interventionId()));
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Écrit les messages encore en attente avant l'arrêt de l'application.
+     */
+    @PreDestroy
+    public void shutdown() {
+        queue.emitComplete(Sinks.EmitFailureHandler.busyLooping(EMIT_RETRY));
+        try {
+            pipeline.get(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            logger.warn("Messages en attente non écrits à l'arrêt: {}", e.getMessage());
+        }
+    }
+}
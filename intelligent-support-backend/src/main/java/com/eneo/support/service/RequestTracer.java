@@ -0,0 +1,231 @@
+package com.eneo.support.service;
+
+import com.eneo.support.dto.TraceResponse;
+import com.eneo.support.dto.TraceSpanResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * Traçage léger des requêtes, en mémoire : chaque étape (Redis, base, Zammad, diffusion WebSocket) est un span
+ * daté par rapport au début de sa trace. Le span courant voyage dans le contexte Reactor, y compris à travers
+ * {@code subscribeOn}/{@code publishOn} ; les traces terminées sont conservées dans un tampon circulaire
+ * ({@code tracing.buffer-size}) et celles qui dépassent {@code tracing.slow-threshold} sont journalisées.
+ */
+@Component
+public class RequestTracer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestTracer.class);
+    private static final String SPAN_KEY = RequestTracer.class.getName() + ".span";
+
+    /**
+     * Étape d'une trace. Le span racine porte l'identifiant 0.
+     */
+    public static final class Span {
+        private final Trace trace;
+        private int id;
+        private final int parentId;
+        private final String name;
+        private final long startNanos;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private long endNanos;
+        // Renseigné en dernier : un span dont l'issue est connue a aussi sa fin
+        private volatile String outcome;
+
+        private Span(Trace trace, int parentId, String name, long startNanos) {
+            this.trace = trace;
+            this.parentId = parentId;
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final class Trace {
+        private final String id = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        private final Instant startedAt = Instant.now();
+        private final long startNanos = System.nanoTime();
+        // Protégée par le moniteur de la trace : les étapes se terminent sur des threads différents
+        private final List<Span> spans = new ArrayList<>();
+        private int droppedSpans;
+        private volatile long durationNanos = -1;
+    }
+
+    private final boolean enabled;
+    private final int maxSpans;
+    private final long slowThresholdNanos;
+    private final AtomicReferenceArray<Trace> recent;
+    private final AtomicLong cursor = new AtomicLong();
+
+    public RequestTracer(@Value("${tracing.enabled:true}") boolean enabled,
+                         @Value("${tracing.buffer-size:1000}") int bufferSize,
+                         @Value("${tracing.max-spans:100}") int maxSpans,
+                         @Value("${tracing.slow-threshold:PT2S}") Duration slowThreshold) {
+        this.enabled = enabled;
+        this.maxSpans = maxSpans;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.recent = new AtomicReferenceArray<>(bufferSize);
+    }
+
+    /**
+     * Démarre une nouvelle trace pour {@code mono}. Les étapes tracées pendant son exécution en deviennent les spans.
+     */
+    public <T> Mono<T> root(String name, Mono<T> mono) {
+        if (!enabled) {
+            return mono;
+        }
+        return Mono.defer(() -> {
+            Trace trace = new Trace();
+            return wrap(start(trace, -1, name, trace.startNanos), mono);
+        });
+    }
+
+    /**
+     * Trace {@code mono} comme étape de la trace en cours. Sans trace en cours, {@code mono} est renvoyé tel quel :
+     * les appels de fond ne remplissent pas le tampon.
+     */
+    public <T> Mono<T> trace(String name, Mono<T> mono) {
+        if (!enabled) {
+            return mono;
+        }
+        return Mono.deferContextual(context -> {
+            Span parent = current(context);
+            if (parent == null) {
+                return mono;
+            }
+            return wrap(start(parent.trace, parent.id, name, System.nanoTime()), mono);
+        });
+    }
+
+    /**
+     * Span en cours dans un contexte Reactor, à capturer avant de passer la main à un autre composant
+     * (voir {@link MessageBatchWriter}).
+     * @return null hors de toute trace.
+     */
+    public Span current(ContextView context) {
+        return context.getOrDefault(SPAN_KEY, null);
+    }
+
+    /**
+     * Ajoute à la trace de {@code parent} une étape déjà mesurée (horodatages {@link System#nanoTime()}).
+     */
+    public void record(Span parent, String name, long startNanos, long endNanos, boolean error) {
+        if (parent == null) {
+            return;
+        }
+        Span span = start(parent.trace, parent.id, name, startNanos);
+        span.endNanos = endNanos;
+        span.outcome = error ? "error" : "success";
+    }
+
+    /**
+     * Le span se termine au premier signal (valeur, fin, erreur ou annulation), avant que l'aval ne le traite :
+     * une étape se termine ainsi avant l'étape qui l'englobe.
+     */
+    private <T> Mono<T> wrap(Span span, Mono<T> mono) {
+        return mono.doOnEach(signal -> {
+                    if (signal.isOnNext() || signal.isOnComplete()) {
+                        finish(span, "success");
+                    } else if (signal.isOnError()) {
+                        finish(span, "error");
+                    }
+                })
+                .doOnCancel(() -> finish(span, "cancelled"))
+                .contextWrite(context -> context.put(SPAN_KEY, span));
+    }
+
+    private Span start(Trace trace, int parentId, String name, long startNanos) {
+        Span span = new Span(trace, parentId, name, startNanos);
+        synchronized (trace) {
+            span.id = trace.spans.size() + trace.droppedSpans;
+            if (trace.spans.size() < maxSpans) {
+                trace.spans.add(span);
+            } else {
+                trace.droppedSpans++;
+            }
+        }
+        return span;
+    }
+
+    private void finish(Span span, String outcome) {
+        if (!span.finished.compareAndSet(false, true)) {
+            return;
+        }
+        span.endNanos = System.nanoTime();
+        span.outcome = outcome;
+        if (span.id != 0) {
+            return;
+        }
+        Trace trace = span.trace;
+        trace.durationNanos = span.endNanos - trace.startNanos;
+        recent.set((int) (cursor.getAndIncrement() % recent.length()), trace);
+        if (trace.durationNanos >= slowThresholdNanos) {
+            logger.warn("Trace lente {} {} {} {}", kv("traceId", trace.id), kv("name", span.name),
+                    kv("durationMs", toMillis(trace.durationNanos)), kv("spans", breakdown(trace)));
+        }
+    }
+
+    /**
+     * Traces terminées les plus lentes parmi les plus récentes.
+     */
+    public List<TraceResponse> slowest(int limit) {
+        List<Trace> traces = new ArrayList<>();
+        for (int i = 0; i < recent.length(); i++) {
+            Trace trace = recent.get(i);
+            if (trace != null) {
+                traces.add(trace);
+            }
+        }
+        return traces.stream()
+                .sorted(Comparator.comparingLong((Trace trace) -> trace.durationNanos).reversed())
+                .limit(limit)
+                .map(RequestTracer::toResponse)
+                .toList();
+    }
+
+    private static TraceResponse toResponse(Trace trace) {
+        List<TraceSpanResponse> spans = snapshot(trace).stream()
+                .map(span -> new TraceSpanResponse(span.id, span.parentId < 0 ? null : span.parentId, span.name,
+                        toMillis(span.startNanos - trace.startNanos),
+                        span.outcome == null ? null : toMillis(span.endNanos - span.startNanos),
+                        span.outcome))
+                .toList();
+        String name = spans.isEmpty() ? null : spans.get(0).getName();
+        return new TraceResponse(trace.id, name, trace.startedAt, toMillis(trace.durationNanos), spans);
+    }
+
+    private static String breakdown(Trace trace) {
+        StringBuilder builder = new StringBuilder();
+        for (Span span : snapshot(trace)) {
+            if (span.id != 0 && span.outcome != null) {
+                builder.append(builder.isEmpty() ? "" : ", ")
+                        .append(span.name).append('=').append(toMillis(span.endNanos - span.startNanos)).append("ms");
+            }
+        }
+        return builder.toString();
+    }
+
+    private static List<Span> snapshot(Trace trace) {
+        synchronized (trace) {
+            return new ArrayList<>(trace.spans);
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 10_000d) / 100d;
+    }
+}
@@ -0,0 +1,10 @@
+package com.eneo.support.service;
+
+/**
+ * Comportement d'un salon de chat lorsqu'un client WebSocket ne consomme pas ses messages assez vite.
+ */
+public enum SlowConsumerPolicy {
+    DROP_OLDEST, // Le tampon du client est borné : les messages les plus anciens sont abandonnés
+    CONFLATE,    // Seul le dernier message non envoyé est conservé
+    DISCONNECT   // Le client est déconnecté dès que son tampon est plein
+}
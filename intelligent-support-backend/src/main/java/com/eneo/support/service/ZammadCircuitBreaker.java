@@ -0,0 +1,103 @@
+package com.eneo.support.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Disjoncteur protégeant Zammad (et nos files d'attente) lorsque l'API est indisponible.
+ * Après {@code failureThreshold} échecs consécutifs, il s'ouvre pendant {@code openDuration} : les appels
+ * sont refusés sans être tentés. Ensuite un seul appel d'essai est autorisé ; son succès referme le disjoncteur.
+ */
+@Component
+public class ZammadCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZammadCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private Instant openedAt;
+    private boolean trialInProgress;
+
+    public ZammadCircuitBreaker(@Value("${zammad.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                                @Value("${zammad.circuit-breaker.open-duration:PT30S}") Duration openDuration) {
+        this(failureThreshold, openDuration, Clock.systemUTC());
+    }
+
+    ZammadCircuitBreaker(int failureThreshold, Duration openDuration, Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * @return vrai si l'appel peut être tenté. En demi-ouverture, un seul appel est autorisé à la fois.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && !clock.instant().isBefore(openedAt.plus(openDuration))) {
+            state = State.HALF_OPEN;
+            trialInProgress = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (trialInProgress) {
+                    yield false;
+                }
+                trialInProgress = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Zammad répond de nouveau : fermeture du disjoncteur");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInProgress = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                logger.warn("Zammad indisponible ({} échecs consécutifs) : ouverture du disjoncteur pour {}", consecutiveFailures, openDuration);
+            }
+            state = State.OPEN;
+            openedAt = clock.instant();
+            trialInProgress = false;
+        }
+    }
+
+    /**
+     * Appel d'essai abandonné sans résultat (annulation) : libère la place pour un autre essai.
+     */
+    public synchronized void releaseTrial() {
+        trialInProgress = false;
+    }
+
+    /**
+     * Instant à partir duquel un nouvel essai sera autorisé (maintenant si le disjoncteur est fermé).
+     */
+    public synchronized Instant retryAt() {
+        return state == State.OPEN ? openedAt.plus(openDuration) : clock.instant();
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+}
@@ -0,0 +1,94 @@
+package com.eneo.support.service;
+
+import com.eneo.support.model.Intervention;
+import com.eneo.support.model.OutboxStatus;
+import com.eneo.support.model.ZammadOperation;
+import com.eneo.support.model.ZammadOutboxEntry;
+import com.eneo.support.repository.ZammadOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Enregistre les appels Zammad à effectuer dans la table {@code zammad_outbox}, au sein de la transaction
+ * de l'appelant : l'appel n'existe que si la modification métier est validée, et il ne peut plus être perdu.
+ * L'envoi est assuré par {@link ZammadOutboxDispatcher}.
+ */
+@Service
+public class ZammadOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZammadOutbox.class);
+
+    /**
+     * Données nécessaires à la création différée du ticket d'une intervention (et, si besoin, de l'utilisateur Zammad).
+     */
+    record TicketCreation(String firstName, String lastName, String email, String phone,
+                          String title, String message, double latitude, double longitude) {
+    }
+
+    private final ZammadOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+
+    public ZammadOutbox(ZammadOutboxRepository outboxRepository, ObjectMapper objectMapper) {
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Demande la création du ticket Zammad d'une intervention enregistrée localement.
+     */
+    @Transactional
+    public void enqueueTicketCreation(Intervention intervention, TicketCreation ticket) {
+        ZammadOutboxEntry entry = new ZammadOutboxEntry();
+        entry.setInterventionId(intervention.getId());
+        entry.setOperation(ZammadOperation.CREATE_TICKET);
+        entry.setStatus(OutboxStatus.PENDING);
+        entry.setPayload(toJson(ticket));
+        entry.setNextAttemptAt(Instant.now());
+        outboxRepository.save(entry);
+        logger.debug("Création du ticket Zammad de l'intervention {} mise en file d'attente", intervention.getId());
+    }
+
+    /**
+     * Demande le passage du ticket de l'intervention dans l'état donné.
+     * Si un changement d'état est déjà en attente pour cette intervention, il est remplacé : seul le dernier état compte.
+     * L'entrée remplacée est verrouillée ; si le dispatcher est en train de la réserver, une nouvelle entrée est créée
+     * et sera envoyée après elle. Le ticket peut ne pas encore exister : l'envoi attend alors sa création.
+     */
+    @Transactional
+    public void enqueueTicketState(Intervention intervention, int stateId) {
+        Long ticketId = intervention.getZammadTicketId();
+        String payload = toJson(Map.of("stateId", stateId));
+
+        ZammadOutboxEntry entry = outboxRepository
+                .lockLatestPending(intervention.getId(), ZammadOperation.UPDATE_TICKET_STATE.name())
+                .orElseGet(() -> {
+                    ZammadOutboxEntry created = new ZammadOutboxEntry();
+                    created.setInterventionId(intervention.getId());
+                    created.setZammadTicketId(ticketId);
+                    created.setOperation(ZammadOperation.UPDATE_TICKET_STATE);
+                    created.setStatus(OutboxStatus.PENDING);
+                    return created;
+                });
+        entry.setPayload(payload);
+        entry.setAttempts(0);
+        entry.setNextAttemptAt(Instant.now());
+        entry.setLastError(null);
+        outboxRepository.save(entry);
+        logger.debug("Changement d'état {} du ticket Zammad de l'intervention {} mis en file d'attente", stateId, intervention.getId());
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Payload d'outbox non sérialisable", e);
+        }
+    }
+}
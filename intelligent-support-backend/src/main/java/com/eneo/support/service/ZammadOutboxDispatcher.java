@@ -0,0 +1,402 @@
+package com.eneo.support.service;
+
+import com.eneo.support.dto.api.ZammadTicketResponse;
+import com.eneo.support.model.OutboxStatus;
+import com.eneo.support.model.ZammadOperation;
+import com.eneo.support.model.ZammadOutboxEntry;
+import com.eneo.support.model.ZammadSyncStatus;
+import com.eneo.support.repository.InterventionRepository;
+import com.eneo.support.repository.ZammadOutboxRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Vide l'outbox Zammad : réserve périodiquement un lot d'entrées dues, fusionne les opérations redondantes
+ * d'un même ticket, les envoie avec une concurrence bornée puis enregistre le résultat de chaque envoi.
+ * Les échecs sont retentés avec un délai exponentiel ; le {@link ZammadCircuitBreaker} suspend les envois
+ * tant que Zammad est indisponible. Pour les interventions créées localement, la création du ticket
+ * ({@link ZammadOperation#CREATE_TICKET}) renseigne ensuite {@code zammadTicketId} ; les opérations suivantes
+ * sur cette intervention attendent que le ticket existe. La création n'étant pas idempotente côté Zammad,
+ * l'identifiant du ticket est enregistré sur l'entrée dès la réponse : une nouvelle tentative relit ce ticket
+ * au lieu d'en créer un second. Si la réponse n'est jamais arrivée (délai dépassé), le ticket n'est retrouvable
+ * que par la référence de son intervention, via la recherche de Zammad dont l'index est mis à jour de façon
+ * asynchrone ; la recherche est donc répétée quelques fois avant de recréer le ticket, et la première tentative
+ * dispose d'un délai plus long ({@code create-timeout}) pour limiter les réponses perdues. Un ticket indexé
+ * après la dernière recherche reste dupliqué.
+ */
+@Component
+public class ZammadOutboxDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZammadOutboxDispatcher.class);
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final String TICKET_REFERENCE_PREFIX = "intervention:";
+
+    private final ZammadOutboxRepository outboxRepository;
+    private final InterventionRepository interventionRepository;
+    private final ZammadService zammadService;
+    private final ZammadUserResolver zammadUserResolver;
+    private final ZammadCircuitBreaker circuitBreaker;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Scheduler persistenceScheduler;
+    private final RequestTracer tracer;
+
+    private final int batchSize;
+    private final int maxConcurrency;
+    private final int maxAttempts;
+    private final Duration requestTimeout;
+    private final Duration createTimeout;
+    private final int searchAttempts;
+    private final Duration searchRetryDelay;
+    private final Duration lease;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration retention;
+
+    private final Counter deliveredCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+    private final Counter supersededCounter;
+
+    public ZammadOutboxDispatcher(ZammadOutboxRepository outboxRepository,
+                                  InterventionRepository interventionRepository,
+                                  ZammadService zammadService,
+                                  ZammadUserResolver zammadUserResolver,
+                                  ZammadCircuitBreaker circuitBreaker,
+                                  ObjectMapper objectMapper,
+                                  PlatformTransactionManager transactionManager,
+                                  Scheduler persistenceScheduler,
+                                  MeterRegistry meterRegistry,
+                                  RequestTracer tracer,
+                                  @Value("${zammad.outbox.batch-size:50}") int batchSize,
+                                  @Value("${zammad.outbox.max-concurrency:4}") int maxConcurrency,
+                                  @Value("${zammad.outbox.max-attempts:10}") int maxAttempts,
+                                  @Value("${zammad.outbox.request-timeout:PT10S}") Duration requestTimeout,
+                                  @Value("${zammad.outbox.create-timeout:PT30S}") Duration createTimeout,
+                                  @Value("${zammad.outbox.search-attempts:3}") int searchAttempts,
+                                  @Value("${zammad.outbox.search-retry-delay:PT1S}") Duration searchRetryDelay,
+                                  @Value("${zammad.outbox.lease:PT2M}") Duration lease,
+                                  @Value("${zammad.outbox.initial-backoff:PT2S}") Duration initialBackoff,
+                                  @Value("${zammad.outbox.max-backoff:PT10M}") Duration maxBackoff,
+                                  @Value("${zammad.outbox.retention:P7D}") Duration retention) {
+        this.outboxRepository = outboxRepository;
+        this.interventionRepository = interventionRepository;
+        this.zammadService = zammadService;
+        this.zammadUserResolver = zammadUserResolver;
+        this.circuitBreaker = circuitBreaker;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.persistenceScheduler = persistenceScheduler;
+        this.tracer = tracer;
+        this.batchSize = batchSize;
+        this.maxConcurrency = maxConcurrency;
+        this.maxAttempts = maxAttempts;
+        this.requestTimeout = requestTimeout;
+        this.createTimeout = createTimeout;
+        this.searchAttempts = searchAttempts;
+        this.searchRetryDelay = searchRetryDelay;
+        this.lease = lease;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retention = retention;
+
+        this.deliveredCounter = Counter.builder("zammad.outbox.delivered").register(meterRegistry);
+        this.retriedCounter = Counter.builder("zammad.outbox.retried").register(meterRegistry);
+        this.failedCounter = Counter.builder("zammad.outbox.failed").register(meterRegistry);
+        this.supersededCounter = Counter.builder("zammad.outbox.superseded").register(meterRegistry);
+        Gauge.builder("zammad.circuit.open", circuitBreaker, breaker -> breaker.state() == ZammadCircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("1 si le disjoncteur Zammad est ouvert ou en cours d'essai")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${zammad.outbox.poll-interval-ms:1000}")
+    public void dispatch() {
+        // Inutile de réserver des entrées qui seraient aussitôt reportées
+        if (circuitBreaker.state() == ZammadCircuitBreaker.State.OPEN && circuitBreaker.retryAt().isAfter(Instant.now())) {
+            return;
+        }
+        List<ZammadOutboxEntry> claimed = transactionTemplate.execute(status -> claim());
+        if (claimed == null || claimed.isEmpty()) {
+            return;
+        }
+
+        // Bail de chaque entrée réservée : le résultat n'est enregistré que si la réservation est toujours la nôtre
+        Map<Long, Instant> leases = claimed.stream()
+                .collect(Collectors.toMap(ZammadOutboxEntry::getId, ZammadOutboxEntry::getLockedUntil));
+        List<ZammadOutboxEntry> results = Flux.fromIterable(claimed)
+                .flatMap(this::deliver, maxConcurrency)
+                .collectList()
+                .block(lease);
+        if (results != null) {
+            transactionTemplate.executeWithoutResult(status -> saveResults(results, leases));
+        }
+    }
+
+    /**
+     * Enregistre les résultats par des UPDATE conditionnels plutôt qu'en fusionnant les entités détachées :
+     * une entrée modifiée entre-temps (bail expiré puis repris) n'est pas écrasée.
+     */
+    private void saveResults(List<ZammadOutboxEntry> results, Map<Long, Instant> leases) {
+        Instant now = Instant.now();
+        List<Long> unsynced = new ArrayList<>();
+        for (ZammadOutboxEntry entry : results) {
+            int updated = outboxRepository.completeDelivery(entry.getId(), leases.get(entry.getId()), entry.getStatus(),
+                    entry.getAttempts(), entry.getNextAttemptAt(), entry.getLastError(), entry.getZammadTicketId(), now);
+            if (updated == 0) {
+                logger.warn("Résultat de l'entrée d'outbox {} ({}) ignoré : réservation expirée et reprise entre-temps",
+                        entry.getId(), entry.getStatus());
+            } else if (entry.getOperation() == ZammadOperation.CREATE_TICKET && entry.getStatus() == OutboxStatus.FAILED) {
+                unsynced.add(entry.getInterventionId());
+            }
+        }
+        if (!unsynced.isEmpty()) {
+            interventionRepository.updateZammadSyncStatus(unsynced, ZammadSyncStatus.SYNC_FAILED);
+        }
+    }
+
+    /**
+     * Réserve les entrées dues pour la durée du bail. Pour chaque intervention, seule la dernière opération de chaque type
+     * est conservée : les précédentes sont marquées SUPERSEDED sans être envoyées. Les opérations dont le ticket
+     * n'est pas encore créé sont reportées.
+     */
+    private List<ZammadOutboxEntry> claim() {
+        Instant now = Instant.now();
+        List<ZammadOutboxEntry> due = outboxRepository.lockDueEntries(now, batchSize);
+
+        Map<String, ZammadOutboxEntry> latest = new LinkedHashMap<>();
+        for (ZammadOutboxEntry entry : due) {
+            String target = entry.getInterventionId() != null ? "intervention:" + entry.getInterventionId() : "ticket:" + entry.getZammadTicketId();
+            String key = target + ":" + entry.getOperation();
+            ZammadOutboxEntry previous = latest.put(key, entry);
+            if (previous != null) {
+                previous.setStatus(OutboxStatus.SUPERSEDED);
+                previous.setLockedUntil(null);
+                supersededCounter.increment();
+            }
+        }
+
+        List<ZammadOutboxEntry> claimed = new ArrayList<>(latest.size());
+        for (ZammadOutboxEntry entry : latest.values()) {
+            if (entry.getOperation() != ZammadOperation.CREATE_TICKET && entry.getZammadTicketId() == null) {
+                Long ticketId = interventionRepository.findZammadTicketIdById(entry.getInterventionId()).orElse(null);
+                if (ticketId == null) {
+                    entry.setStatus(OutboxStatus.PENDING);
+                    entry.setLockedUntil(null);
+                    entry.setNextAttemptAt(now.plus(initialBackoff));
+                    continue;
+                }
+                entry.setZammadTicketId(ticketId);
+            }
+            claimed.add(entry);
+        }
+        claimed.sort(Comparator.comparing(ZammadOutboxEntry::getId));
+        // Précision de la colonne (microsecondes) : le bail relu par completeDelivery doit être identique
+        Instant lockedUntil = now.plus(lease).truncatedTo(ChronoUnit.MICROS);
+        for (ZammadOutboxEntry entry : claimed) {
+            entry.setStatus(OutboxStatus.IN_FLIGHT);
+            entry.setLockedUntil(lockedUntil);
+            entry.setAttempts(entry.getAttempts() + 1);
+        }
+        return claimed;
+    }
+
+    private Mono<ZammadOutboxEntry> deliver(ZammadOutboxEntry entry) {
+        if (!circuitBreaker.tryAcquire()) {
+            // Disjoncteur ouvert : l'entrée est reportée sans consommer de tentative
+            entry.setStatus(OutboxStatus.PENDING);
+            entry.setAttempts(entry.getAttempts() - 1);
+            entry.setNextAttemptAt(circuitBreaker.retryAt());
+            entry.setLockedUntil(null);
+            return Mono.just(entry);
+        }
+        // Première création : délai plus long, une réponse perdue obligerait à rechercher le ticket
+        boolean firstCreation = entry.getOperation() == ZammadOperation.CREATE_TICKET && entry.getAttempts() <= 1;
+        return tracer.root("zammad.outbox." + entry.getOperation().name().toLowerCase(), execute(entry))
+                .timeout(firstCreation ? createTimeout : requestTimeout)
+                .then(Mono.fromCallable(() -> {
+                    circuitBreaker.recordSuccess();
+                    entry.setStatus(OutboxStatus.SENT);
+                    entry.setLockedUntil(null);
+                    entry.setLastError(null);
+                    deliveredCounter.increment();
+                    return entry;
+                }))
+                .onErrorResume(error -> Mono.just(handleFailure(entry, error)))
+                .doOnCancel(circuitBreaker::releaseTrial);
+    }
+
+    private Mono<Void> execute(ZammadOutboxEntry entry) {
+        return switch (entry.getOperation()) {
+            case CREATE_TICKET -> Mono.fromCallable(() -> objectMapper.treeToValue(readPayload(entry), ZammadOutbox.TicketCreation.class))
+                    .flatMap(ticket -> findCreatedTicket(entry)
+                            .switchIfEmpty(Mono.defer(() -> zammadUserResolver.resolveUserId(ticket.firstName(), ticket.lastName(), ticket.email(), ticket.phone())
+                                    .flatMap(userId -> zammadService.createTicket(ticket.title(), ticket.message(), userId,
+                                            ticket.latitude(), ticket.longitude(), TICKET_REFERENCE_PREFIX + entry.getInterventionId())))
+                                    .publishOn(persistenceScheduler)
+                                    .doOnNext(response -> recordCreatedTicket(entry, response.getId()))))
+                    .publishOn(persistenceScheduler)
+                    .doOnNext(response -> attachTicket(entry, response.getId(), response.getCustomer_id()))
+                    .then();
+            case UPDATE_TICKET_STATE -> Mono.fromCallable(() -> readPayload(entry).path("stateId").asInt())
+                    .flatMap(stateId -> zammadService.updateTicketState(entry.getZammadTicketId(), stateId));
+        };
+    }
+
+    /**
+     * Ticket déjà créé pour l'intervention par une tentative précédente : relu par son identifiant s'il a été
+     * enregistré sur l'entrée, sinon recherché par référence. La première tentative n'a rien à chercher.
+     */
+    private Mono<ZammadTicketResponse> findCreatedTicket(ZammadOutboxEntry entry) {
+        if (entry.getZammadTicketId() != null) {
+            return zammadService.getTicket(entry.getZammadTicketId())
+                    .doOnNext(ticket -> logger.info("Ticket Zammad {} déjà créé pour l'intervention {} lors d'une tentative précédente",
+                            ticket.getId(), entry.getInterventionId()));
+        }
+        if (entry.getAttempts() <= 1) {
+            return Mono.empty();
+        }
+        return searchCreatedTicket(TICKET_REFERENCE_PREFIX + entry.getInterventionId(), searchAttempts)
+                .doOnNext(ticket -> logger.info("Ticket Zammad {} retrouvé par référence pour l'intervention {}",
+                        ticket.getId(), entry.getInterventionId()));
+    }
+
+    /**
+     * Recherche répétée : l'index de Zammad peut ne pas encore contenir un ticket tout juste créé.
+     */
+    private Mono<ZammadTicketResponse> searchCreatedTicket(String reference, int remaining) {
+        return zammadService.findTicketByReference(reference)
+                .switchIfEmpty(Mono.defer(() -> remaining > 1
+                        ? Mono.delay(searchRetryDelay).then(searchCreatedTicket(reference, remaining - 1))
+                        : Mono.empty()));
+    }
+
+    /**
+     * Enregistre le ticket sur l'entrée dès la réponse de Zammad. En cas d'échec, la recherche par référence prend le relais.
+     */
+    private void recordCreatedTicket(ZammadOutboxEntry entry, Long ticketId) {
+        entry.setZammadTicketId(ticketId);
+        try {
+            transactionTemplate.executeWithoutResult(status -> outboxRepository.recordCreatedTicket(entry.getId(), ticketId));
+        } catch (RuntimeException e) {
+            logger.warn("Ticket Zammad {} non enregistré sur l'entrée d'outbox {}: {}", ticketId, entry.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Renseigne le ticket créé sur l'intervention. En cas d'échec ici, l'opération est retentée et retrouve
+     * le ticket par sa référence au lieu d'en créer un second.
+     */
+    private void attachTicket(ZammadOutboxEntry entry, Long ticketId, Long customerId) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> interventionRepository.findById(entry.getInterventionId())
+                    .ifPresentOrElse(intervention -> {
+                        intervention.setZammadTicketId(ticketId);
+                        intervention.setCustomerId(customerId);
+                        intervention.setZammadSyncStatus(ZammadSyncStatus.SYNCED);
+                    }, () -> logger.warn("Ticket Zammad {} créé pour l'intervention {} qui n'existe plus", ticketId, entry.getInterventionId())));
+        } catch (RuntimeException e) {
+            logger.error("Ticket Zammad {} créé mais non rattaché à l'intervention {}, nouvel essai à venir",
+                    ticketId, entry.getInterventionId());
+            throw e;
+        }
+        entry.setZammadTicketId(ticketId);
+        logger.info("Ticket Zammad {} créé pour l'intervention {}", ticketId, entry.getInterventionId());
+    }
+
+    private ZammadOutboxEntry handleFailure(ZammadOutboxEntry entry, Throwable error) {
+        boolean permanent = isPermanent(error);
+        if (permanent) {
+            // Zammad a répondu : il est disponible, c'est la requête qui est refusée
+            circuitBreaker.recordSuccess();
+        } else {
+            circuitBreaker.recordFailure();
+        }
+        entry.setLockedUntil(null);
+        entry.setLastError(truncate(error.toString()));
+
+        if (permanent || entry.getAttempts() >= maxAttempts) {
+            entry.setStatus(OutboxStatus.FAILED);
+            failedCounter.increment();
+            logger.error("Abandon de l'opération {} sur le ticket Zammad {} après {} tentative(s): {}",
+                    entry.getOperation(), entry.getZammadTicketId(), entry.getAttempts(), error.getMessage());
+        } else {
+            entry.setStatus(OutboxStatus.PENDING);
+            entry.setNextAttemptAt(Instant.now().plus(backoff(entry.getAttempts())));
+            retriedCounter.increment();
+            logger.warn("Échec de l'opération {} sur le ticket Zammad {} (tentative {}), nouvel essai à {}: {}",
+                    entry.getOperation(), entry.getZammadTicketId(), entry.getAttempts(), entry.getNextAttemptAt(), error.getMessage());
+        }
+        return entry;
+    }
+
+    /**
+     * Délai exponentiel plafonné, tiré aléatoirement dans sa moitié haute pour étaler les reprises.
+     */
+    private Duration backoff(int attempts) {
+        long max = maxBackoff.toMillis();
+        long delay = initialBackoff.toMillis() << Math.min(attempts - 1, 30);
+        delay = delay <= 0 || delay > max ? max : delay;
+        return Duration.ofMillis(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+    }
+
+    private static boolean isPermanent(Throwable error) {
+        if (error instanceof WebClientResponseException responseError) {
+            HttpStatus status = HttpStatus.resolve(responseError.getStatusCode().value());
+            return responseError.getStatusCode().is4xxClientError()
+                    && status != HttpStatus.REQUEST_TIMEOUT && status != HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return error instanceof IllegalArgumentException;
+    }
+
+    private JsonNode readPayload(ZammadOutboxEntry entry) {
+        try {
+            return objectMapper.readTree(entry.getPayload());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Payload d'outbox illisible (entrée " + entry.getId() + ")", e);
+        }
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    /**
+     * Supprime les entrées traitées depuis plus que la durée de rétention. Les entrées FAILED sont conservées
+     * pour analyse.
+     */
+    @Scheduled(fixedDelayString = "${zammad.outbox.purge-interval-ms:3600000}", initialDelayString = "${zammad.outbox.purge-interval-ms:3600000}")
+    public void purge() {
+        Integer deleted = transactionTemplate.execute(status -> outboxRepository.deleteByStatusInAndUpdatedAtBefore(
+                EnumSet.of(OutboxStatus.SENT, OutboxStatus.SUPERSEDED), Instant.now().minus(retention)));
+        if (deleted != null && deleted > 0) {
+            logger.info("{} entrée(s) traitée(s) supprimée(s) de l'outbox Zammad", deleted);
+        }
+    }
+}
@@ -4,33 +4,40 @@ import com.eneo.support.dto.api.ZammadArticle;
 import com.eneo.support.dto.api.ZammadTicket;
 import com.eneo.support.dto.api.ZammadTicketResponse;
 import com.eneo.support.dto.api.ZammadUser;
-import org.springframework.beans.factory.annotation.Value;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
 import java.util.List;
 import java.util.Map; // Import nécessaire
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Service pour interagir avec l'API de Zammad.
  * Gère la création, la mise à jour et la consultation des utilisateurs et tickets.
+ * Le client {@code zammadWebClient} porte l'URL de base et le jeton ; les routes sont des modèles d'URI,
+ * pour que les métriques soient regroupées par route et non par ticket.
+ * Chaque appel est aussi mesuré par opération métier et par issue ({@code zammad.calls}),
+ * et apparaît comme étape {@code zammad.<opération>} de la trace en cours.
  */
 @Service
 public class ZammadService {
 
     private final WebClient webClient;
-    private final String zammadApiBaseUrl;
-    private final String zammadApiToken;
+    private final MeterRegistry meterRegistry;
+    private final RequestTracer tracer;
     private static final long ZAMMAD_DEFAULT_ROLE_ID = 2;
 
-    public ZammadService(WebClient webClient,
-                         @Value("${zammad.api.base-url}") String zammadApiBaseUrl,
-                         @Value("${zammad.api.token}") String zammadApiToken) {
-        this.webClient = webClient;
-        this.zammadApiBaseUrl = zammadApiBaseUrl;
-        this.zammadApiToken = zammadApiToken;
+    public ZammadService(WebClient zammadWebClient, MeterRegistry meterRegistry, RequestTracer tracer) {
+        this.webClient = zammadWebClient;
+        this.meterRegistry = meterRegistry;
+        this.tracer = tracer;
     }
 
     public Mono<ZammadUser> findOrCreateUser(String firstName, String lastName, String email, String phone) {
@@ -45,11 +52,10 @@ public class ZammadService {
     }
 
     private Mono<ZammadUser> findUser(String query) {
-        return webClient.get()
-                .uri(zammadApiBaseUrl + "/users/search?query=" + query)
-                .header(HttpHeaders.AUTHORIZATION, "Token token=" + zammadApiToken)
+        return timed("find_user", webClient.get()
+                .uri("/users/search?query={query}", query)
                 .retrieve()
-                .bodyToMono(new ParameterizedTypeReference<List<ZammadUser>>() {})
+                .bodyToMono(new ParameterizedTypeReference<List<ZammadUser>>() {}))
                 .flatMap(users -> {
                     if (!users.isEmpty()) {
                         return Mono.just(users.get(0));
@@ -66,15 +72,22 @@ public class ZammadService {
         newUser.setPhone(phone);
         newUser.setRole_ids(new long[]{ZAMMAD_DEFAULT_ROLE_ID});
 
-        return webClient.post()
-                .uri(zammadApiBaseUrl + "/users")
-                .header(HttpHeaders.AUTHORIZATION, "Token token=" + zammadApiToken)
+        return timed("create_user", webClient.post()
+                .uri("/users")
                 .bodyValue(newUser)
                 .retrieve()
-                .bodyToMono(ZammadUser.class);
+                .bodyToMono(ZammadUser.class));
     }
 
     public Mono<ZammadTicketResponse> createTicket(String title, String userMessage, long customerId, double latitude, double longitude) {
+        return createTicket(title, userMessage, customerId, latitude, longitude, null);
+    }
+
+    /**
+     * Crée un ticket portant {@code reference} dans sa note, retrouvable ensuite par {@link #findTicketByReference}.
+     */
+    public Mono<ZammadTicketResponse> createTicket(String title, String userMessage, long customerId, double latitude, double longitude,
+                                                   String reference) {
         ZammadArticle firstArticle = new ZammadArticle(null, userMessage, "note", false);
 
         ZammadTicket newTicketRequest = new ZammadTicket();
@@ -84,13 +97,37 @@ public class ZammadService {
         newTicketRequest.setArticle(firstArticle);
         newTicketRequest.setLatitude(String.valueOf(latitude));
         newTicketRequest.setLongitude(String.valueOf(longitude));
+        newTicketRequest.setNote(reference);
 
-        return webClient.post()
-                .uri(zammadApiBaseUrl + "/tickets")
-                .header(HttpHeaders.AUTHORIZATION, "Token token=" + zammadApiToken)
+        return timed("create_ticket", webClient.post()
+                .uri("/tickets")
                 .bodyValue(newTicketRequest)
                 .retrieve()
-                .bodyToMono(ZammadTicketResponse.class);
+                .bodyToMono(ZammadTicketResponse.class));
+    }
+
+    /**
+     * Ticket par son identifiant (lecture directe, sans passer par l'index de recherche).
+     */
+    public Mono<ZammadTicketResponse> getTicket(long ticketId) {
+        return timed("get_ticket", webClient.get()
+                .uri("/tickets/{id}", ticketId)
+                .retrieve()
+                .bodyToMono(ZammadTicketResponse.class));
+    }
+
+    /**
+     * Ticket créé avec la référence {@code reference} (voir {@link #createTicket(String, String, long, double, double, String)}).
+     * La recherche passe par l'index Elasticsearch de Zammad, mis à jour de façon asynchrone : un ticket
+     * créé il y a moins d'une seconde environ peut ne pas encore être trouvé.
+     * @return vide si aucun ticket indexé ne porte cette référence.
+     */
+    public Mono<ZammadTicketResponse> findTicketByReference(String reference) {
+        return timed("find_ticket", webClient.get()
+                .uri("/tickets/search?query={query}&expand=true&limit=1", "note:\"" + reference + "\"")
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<ZammadTicketResponse>>() {}))
+                .flatMap(tickets -> tickets.isEmpty() ? Mono.empty() : Mono.just(tickets.get(0)));
     }
 
     public Mono<Void> addArticleToTicket(long ticketId, String messageBody, boolean isInternal) {
@@ -98,12 +135,11 @@ public class ZammadService {
         record ArticleCreationRequest(long ticket_id, String body, String type, boolean internal) {}
         ArticleCreationRequest request = new ArticleCreationRequest(ticketId, messageBody, "note", isInternal);
 
-        return webClient.post()
-                .uri(zammadApiBaseUrl + "/ticket_articles")
-                .header(HttpHeaders.AUTHORIZATION, "Token token=" + zammadApiToken)
+        return timed("add_article", webClient.post()
+                .uri("/ticket_articles")
                 .bodyValue(request)
                 .retrieve()
-                .bodyToMono(Void.class);
+                .bodyToMono(Void.class));
     }
 
     /**
@@ -118,11 +154,55 @@ public class ZammadService {
         // Map.of est un moyen simple de créer un corps JSON { "state_id": stateId }.
         Map<String, Integer> requestBody = Map.of("state_id", stateId);
 
-        return webClient.put()
-                .uri(zammadApiBaseUrl + "/tickets/" + ticketId)
-                .header(HttpHeaders.AUTHORIZATION, "Token token=" + zammadApiToken)
+        return timed("update_ticket_state", webClient.put()
+                .uri("/tickets/{ticketId}", ticketId)
                 .bodyValue(requestBody)
                 .retrieve()
-                .bodyToMono(Void.class);
+                .bodyToMono(Void.class));
+    }
+
+    /**
+     * Mesure un appel à Zammad : durée par opération et par issue (success, client_error, server_error,
+     * timeout, error ou cancelled lorsque l'appelant abandonne, par exemple sur le délai de l'outbox).
+     */
+    private <T> Mono<T> timed(String operation, Mono<T> call) {
+        return tracer.trace("zammad." + operation, Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            // Une seule mesure par appel : la valeur, la fin ou l'annulation peuvent se suivre
+            AtomicBoolean stopped = new AtomicBoolean();
+            return call.doOnEach(signal -> {
+                        if (signal.isOnComplete() || signal.isOnNext()) {
+                            stop(sample, stopped, operation, "success");
+                        } else if (signal.isOnError()) {
+                            stop(sample, stopped, operation, outcome(signal.getThrowable()));
+                        }
+                    })
+                    .doFinally(signal -> {
+                        if (signal == SignalType.CANCEL) {
+                            stop(sample, stopped, operation, "cancelled");
+                        }
+                    });
+        }));
+    }
+
+    private void stop(Timer.Sample sample, AtomicBoolean stopped, String operation, String outcome) {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        sample.stop(Timer.builder("zammad.calls")
+                .description("Appels à l'API Zammad")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    private static String outcome(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return response.getStatusCode().is4xxClientError() ? "client_error" : "server_error";
+        }
+        if (error instanceof TimeoutException) {
+            return "timeout";
+        }
+        return "error";
     }
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+package com.eneo.support.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Résout l'identifiant Zammad d'un client à partir de son email ou de son téléphone.
+ * Les résultats sont mis en cache à deux niveaux : un cache local (Caffeine) puis Redis ({@code zammad:user:<clé>}),
+ * partagé par les instances. Les recherches simultanées d'une même clé sont regroupées en un seul appel à Zammad :
+ * localement via une table des recherches en cours, entre instances via un verrou Redis de courte durée.
+ * On évite ainsi de créer plusieurs fois le même utilisateur lorsqu'un client envoie plusieurs premiers messages.
+ */
+@Component
+public class ZammadUserResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZammadUserResolver.class);
+    private static final String CACHE_KEY_PREFIX = "zammad:user:";
+    private static final String LOCK_KEY_PREFIX = "zammad:user:lock:";
+    private static final String DEFAULT_COUNTRY_CODE = "237";
+    private static final int LOCAL_PHONE_LENGTH = 9;
+    private static final Duration LOCK_POLL_INTERVAL = Duration.ofMillis(100);
+
+    private final ZammadService zammadService;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final Duration redisTtl;
+    private final Duration lockTtl;
+
+    private final Cache<String, Long> localCache;
+    private final Map<String, Mono<Long>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter upstreamCalls;
+
+    public ZammadUserResolver(ZammadService zammadService,
+                              ReactiveStringRedisTemplate redisTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${zammad.user-cache.local-ttl:PT10M}") Duration localTtl,
+                              @Value("${zammad.user-cache.local-max-size:100000}") long localMaxSize,
+                              @Value("${zammad.user-cache.redis-ttl:P1D}") Duration redisTtl,
+                              @Value("${zammad.user-cache.lock-ttl:PT10S}") Duration lockTtl) {
+        this.zammadService = zammadService;
+        this.redisTemplate = redisTemplate;
+        this.redisTtl = redisTtl;
+        this.lockTtl = lockTtl;
+        this.localCache = Caffeine.newBuilder()
+                .expireAfterWrite(localTtl)
+                .maximumSize(localMaxSize)
+                .build();
+
+        this.localHits = Counter.builder("zammad.user.lookups").tag("source", "local").register(meterRegistry);
+        this.redisHits = Counter.builder("zammad.user.lookups").tag("source", "redis").register(meterRegistry);
+        this.upstreamCalls = Counter.builder("zammad.user.lookups").tag("source", "zammad").register(meterRegistry);
+    }
+
+    /**
+     * Retourne l'identifiant Zammad du client, en le créant dans Zammad s'il n'existe pas encore.
+     * L'email est prioritaire sur le téléphone, comme pour {@link ZammadService#findOrCreateUser}.
+     */
+    public Mono<Long> resolveUserId(String firstName, String lastName, String email, String phone) {
+        String key = cacheKey(email, phone);
+        if (key == null) {
+            return Mono.error(new IllegalArgumentException("Un email ou un numéro de téléphone doit être fourni."));
+        }
+        Long cached = localCache.getIfPresent(key);
+        if (cached != null) {
+            localHits.increment();
+            return Mono.just(cached);
+        }
+        // Une seule recherche par clé sur cette instance ; les appels simultanés partagent son résultat
+        return inFlight.computeIfAbsent(key, k -> readFromRedis(k)
+                .doOnNext(id -> redisHits.increment())
+                .switchIfEmpty(Mono.defer(() -> resolveWithLock(k, firstName, lastName, email, phone)))
+                .doOnNext(id -> localCache.put(k, id))
+                .doFinally(signal -> inFlight.remove(k))
+                .cache());
+    }
+
+    /**
+     * Appelle Zammad sous un verrou Redis, pour qu'une seule instance crée l'utilisateur.
+     * Si le verrou est pris, on attend que son détenteur publie le résultat ; à défaut (verrou expiré, Redis
+     * indisponible), on appelle Zammad quand même : la recherche préalable limite alors le risque de doublon.
+     */
+    private Mono<Long> resolveWithLock(String key, String firstName, String lastName, String email, String phone) {
+        return redisTemplate.opsForValue().setIfAbsent(LOCK_KEY_PREFIX + key, "1", lockTtl)
+                .onErrorReturn(true)
+                .flatMap(acquired -> acquired
+                        ? callZammad(key, firstName, lastName, email, phone)
+                                .doFinally(signal -> releaseLock(key))
+                        : awaitOtherInstance(key)
+                                .switchIfEmpty(Mono.defer(() -> callZammad(key, firstName, lastName, email, phone))));
+    }
+
+    private void releaseLock(String key) {
+        redisTemplate.delete(LOCK_KEY_PREFIX + key)
+                .onErrorResume(error -> Mono.empty())
+                .subscribe();
+    }
+
+    private Mono<Long> awaitOtherInstance(String key) {
+        return readFromRedis(key)
+                .repeatWhenEmpty(attempts -> attempts.delayElements(LOCK_POLL_INTERVAL)
+                        .take(Math.max(1, lockTtl.toMillis() / LOCK_POLL_INTERVAL.toMillis())));
+    }
+
+    private Mono<Long> callZammad(String key, String firstName, String lastName, String email, String phone) {
+        upstreamCalls.increment();
+        return zammadService.findOrCreateUser(firstName, lastName, email, phone)
+                .map(user -> user.getId())
+                .flatMap(id -> redisTemplate.opsForValue().set(CACHE_KEY_PREFIX + key, String.valueOf(id), redisTtl)
+                        .doOnError(error -> logger.warn("Impossible de mettre en cache l'utilisateur Zammad {}: {}", id, error.getMessage()))
+                        .onErrorReturn(false)
+                        .thenReturn(id));
+    }
+
+    private Mono<Long> readFromRedis(String key) {
+        return redisTemplate.opsForValue().get(CACHE_KEY_PREFIX + key)
+                .map(Long::valueOf)
+                .onErrorResume(error -> {
+                    logger.warn("Cache Redis des utilisateurs Zammad indisponible: {}", error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Clé de cache normalisée : email en minuscules, ou téléphone réduit à ses chiffres avec indicatif pays.
+     */
+    static String cacheKey(String email, String phone) {
+        if (email != null && !email.isBlank()) {
+            return "email:" + email.trim().toLowerCase(Locale.ROOT);
+        }
+        if (phone != null && !phone.isBlank()) {
+            String digits = phone.replaceAll("\\D", "");
+            if (digits.startsWith("00")) {
+                digits = digits.substring(2);
+            } else if (digits.length() == LOCAL_PHONE_LENGTH) {
+                digits = DEFAULT_COUNTRY_CODE + digits;
+            }
+            return digits.isEmpty() ? null : "phone:" + digits;
+        }
+        return null;
+    }
+}
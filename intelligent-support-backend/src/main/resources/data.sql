@@ -0,0 +1,9 @@
+-- Exécuté après la mise à jour du schéma par Hibernate (spring.jpa.defer-datasource-initialization).
+-- Chaque instruction doit pouvoir être rejouée à chaque démarrage.
+
+-- Création locale des interventions : le ticket Zammad est renseigné après coup
+ALTER TABLE interventions ALTER COLUMN zammad_ticket_id DROP NOT NULL;
+
+-- Identifiants des messages issus de messages_seq (incrément 50) : la séquence doit démarrer après les
+-- identifiants attribués par l'ancienne colonne IDENTITY. Elle n'est jamais reculée.
+SELECT setval('messages_seq', GREATEST((SELECT last_value FROM messages_seq), (SELECT COALESCE(MAX(id), 0) FROM messages)));
@@ -0,0 +1,72 @@
+package com.eneo.support.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AgentSpatialIndexTest {
+
+	private final AgentSpatialIndex index = new AgentSpatialIndex(0.05, Duration.ofMinutes(5));
+
+	@Test
+	void nearestMatchesBruteForce() {
+		Random random = new Random(42);
+		Instant now = Instant.now();
+		for (long id = 1; id <= 3000; id++) {
+			// Agents répartis autour de Douala
+			index.update(id, 4.05 + random.nextGaussian() * 0.3, 9.70 + random.nextGaussian() * 0.3, now);
+		}
+
+		for (int i = 0; i < 50; i++) {
+			double lat = 4.05 + random.nextGaussian() * 0.5;
+			double lon = 9.70 + random.nextGaussian() * 0.5;
+
+			List<Long> expected = LongStream.rangeClosed(1, 3000)
+					.mapToObj(index::get)
+					.sorted(Comparator.comparingDouble(e -> AgentSpatialIndex.haversineKm(lat, lon, e.latitude(), e.longitude())))
+					.limit(5)
+					.map(AgentSpatialIndex.Entry::agentId)
+					.collect(Collectors.toList());
+
+			List<Long> actual = index.nearest(lat, lon, 5, false).stream()
+					.map(n -> n.entry().agentId())
+					.collect(Collectors.toList());
+
+			assertThat(actual).isEqualTo(expected);
+		}
+	}
+
+	@Test
+	void movingAnAgentRelocatesItInTheGrid() {
+		Instant now = Instant.now();
+		index.update(1L, 4.05, 9.70, now);
+		index.update(1L, 3.87, 11.52, now);
+
+		assertThat(index.nearest(3.87, 11.52, 1, false))
+				.singleElement()
+				.satisfies(n -> assertThat(n.distanceKm()).isLessThan(0.001));
+		assertThat(index.size()).isEqualTo(1);
+	}
+
+	@Test
+	void onlineOnlySkipsStaleAgents() {
+		Instant now = Instant.now();
+		index.update(1L, 4.05, 9.70, now.minus(Duration.ofHours(1)));
+		index.update(2L, 4.30, 9.90, now);
+
+		assertThat(index.nearest(4.05, 9.70, 1, true))
+				.extracting(n -> n.entry().agentId())
+				.containsExactly(2L);
+		assertThat(index.nearest(4.05, 9.70, 1, false))
+				.extracting(n -> n.entry().agentId())
+				.containsExactly(1L);
+	}
+}
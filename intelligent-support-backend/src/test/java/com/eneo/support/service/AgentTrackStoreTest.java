@@ -0,0 +1,112 @@
+package com.eneo.support.service;
+
+import com.eneo.support.model.AgentTrackChunk;
+import com.eneo.support.repository.AgentTrackChunkRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class AgentTrackStoreTest {
+
+	private final AgentTrackChunkRepository repository = mock(AgentTrackChunkRepository.class);
+	private final AtomicLong ids = new AtomicLong();
+	private final List<AgentTrackChunk> saved = new ArrayList<>();
+
+	private AgentTrackStore store(int maxUnsavedChunks) {
+		// Un point suffit à fermer un tronçon
+		return new AgentTrackStore(repository, mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+				1, Duration.ofMinutes(5), Duration.ofDays(90), maxUnsavedChunks);
+	}
+
+	@Test
+	void failedBatchIsRetriedAsNewRows() {
+		AgentTrackStore store = store(100);
+		// Premier lot : identifiants IDENTITY attribués, puis annulation de la transaction
+		doAnswer(invocation -> {
+			List<AgentTrackChunk> chunks = invocation.getArgument(0);
+			chunks.forEach(chunk -> chunk.setId(ids.incrementAndGet()));
+			throw new DataAccessResourceFailureException("base indisponible");
+		}).doAnswer(invocation -> {
+			List<AgentTrackChunk> chunks = invocation.getArgument(0);
+			chunks.forEach(this::insert);
+			return chunks;
+		}).when(repository).saveAll(anyList());
+		doAnswer(invocation -> insert(invocation.getArgument(0))).when(repository).save(any());
+
+		store.record(1L, 4.05, 9.70, Instant.ofEpochMilli(1_000));
+		store.record(2L, 4.06, 9.71, Instant.ofEpochMilli(1_000));
+		store.flush();
+		assertThat(saved).isEmpty();
+
+		store.record(1L, 4.07, 9.72, Instant.ofEpochMilli(2_000));
+		store.flush();
+
+		assertThat(saved).hasSize(3).extracting(AgentTrackChunk::getAgentId).containsExactlyInAnyOrder(1L, 1L, 2L);
+		assertThat(store.track(1L, Instant.EPOCH, Instant.ofEpochMilli(10_000), 100).getTotalPoints()).isZero();
+	}
+
+	@Test
+	void invalidChunkDoesNotBlockOthers() {
+		AgentTrackStore store = store(100);
+		doAnswer(invocation -> {
+			throw new DataAccessResourceFailureException("base indisponible");
+		}).when(repository).saveAll(anyList());
+		doAnswer(invocation -> {
+			AgentTrackChunk chunk = invocation.getArgument(0);
+			if (chunk.getAgentId() == 1L) {
+				throw new DataIntegrityViolationException("ligne invalide");
+			}
+			return insert(chunk);
+		}).when(repository).save(any());
+
+		store.record(1L, 4.05, 9.70, Instant.ofEpochMilli(1_000));
+		store.record(2L, 4.06, 9.71, Instant.ofEpochMilli(1_000));
+		store.flush();
+		// Aucun nouveau tronçon : seuls les tronçons en attente sont retentés
+		store.flush();
+
+		assertThat(saved).extracting(AgentTrackChunk::getAgentId).containsExactly(2L);
+		assertThat(store.track(1L, Instant.EPOCH, Instant.ofEpochMilli(10_000), 100).getTotalPoints()).isEqualTo(1);
+	}
+
+	@Test
+	void unsavedChunksAreCapped() {
+		AgentTrackStore store = store(2);
+		doAnswer(invocation -> {
+			throw new DataAccessResourceFailureException("base indisponible");
+		}).when(repository).saveAll(anyList());
+
+		for (long agentId = 1; agentId <= 5; agentId++) {
+			store.record(agentId, 4.05, 9.70, Instant.ofEpochMilli(agentId * 1_000));
+			store.flush();
+		}
+
+		// Les tronçons les plus anciens sont abandonnés
+		assertThat(store.track(1L, Instant.EPOCH, Instant.ofEpochMilli(10_000), 100).getTotalPoints()).isZero();
+		assertThat(store.track(5L, Instant.EPOCH, Instant.ofEpochMilli(10_000), 100).getTotalPoints()).isEqualTo(1);
+	}
+
+	private AgentTrackChunk insert(AgentTrackChunk chunk) {
+		// Comme un merge Hibernate sur un identifiant sans ligne
+		if (chunk.getId() != null) {
+			throw new IllegalStateException("tronçon détaché : " + chunk.getId());
+		}
+		chunk.setId(ids.incrementAndGet());
+		saved.add(chunk);
+		return chunk;
+	}
+}
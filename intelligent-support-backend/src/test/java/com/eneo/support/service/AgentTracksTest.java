@@ -0,0 +1,64 @@
+package com.eneo.support.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AgentTracksTest {
+
+	@Test
+	void encodeDecodeRoundTrip() {
+		Random random = new Random(7);
+		List<AgentTracks.Point> points = new ArrayList<>();
+		long time = 1_714_550_400_000L;
+		double lat = 4.05;
+		double lon = 9.70;
+		for (int i = 0; i < 1000; i++) {
+			time += 5_000 + random.nextInt(10_000);
+			lat += random.nextGaussian() * 0.0005;
+			lon += random.nextGaussian() * 0.0005;
+			points.add(AgentTracks.Point.of(time, lat, lon));
+		}
+
+		byte[] data = AgentTracks.encode(points);
+
+		assertThat(AgentTracks.decode(data)).isEqualTo(points);
+		// Bien moins que 3 valeurs de 8 octets par point
+		assertThat(data.length).isLessThan(points.size() * 10);
+	}
+
+	@Test
+	void simplifyKeepsEndpointsAndCorners() {
+		// Aller en ligne droite vers l'est, puis vers le nord : le coin doit être conservé
+		List<AgentTracks.Point> points = new ArrayList<>();
+		for (int i = 0; i <= 100; i++) {
+			points.add(AgentTracks.Point.of(i * 1000L, 4.0, 9.0 + i * 0.001));
+		}
+		for (int i = 1; i <= 100; i++) {
+			points.add(AgentTracks.Point.of((100 + i) * 1000L, 4.0 + i * 0.001, 9.1));
+		}
+
+		List<AgentTracks.Point> simplified = AgentTracks.simplify(points, 3);
+
+		assertThat(simplified).containsExactly(points.get(0), points.get(100), points.get(200));
+	}
+
+	@Test
+	void simplifyBoundsPointCount() {
+		Random random = new Random(42);
+		List<AgentTracks.Point> points = new ArrayList<>();
+		for (int i = 0; i < 20_000; i++) {
+			points.add(AgentTracks.Point.of(i * 1000L, 4.05 + random.nextGaussian() * 0.01, 9.70 + random.nextGaussian() * 0.01));
+		}
+
+		List<AgentTracks.Point> simplified = AgentTracks.simplify(points, 500);
+
+		assertThat(simplified).hasSize(500);
+		assertThat(simplified).isSortedAccordingTo((a, b) -> Long.compare(a.epochMillis(), b.epochMillis()));
+		assertThat(AgentTracks.simplify(points.subList(0, 10), 500)).hasSize(10);
+	}
+}
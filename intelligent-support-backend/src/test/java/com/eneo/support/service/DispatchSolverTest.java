@@ -0,0 +1,126 @@
+package com.eneo.support.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DispatchSolverTest {
+
+	private static final double INF = Double.POSITIVE_INFINITY;
+
+	@Test
+	void hungarianMatchesBruteForce() {
+		Random random = new Random(11);
+		for (int round = 0; round < 200; round++) {
+			int rows = 1 + random.nextInt(5);
+			int columns = 1 + random.nextInt(5);
+			double[][] cost = randomCost(random, rows, columns, 0.2);
+
+			int[] assignment = DispatchSolver.hungarian(cost, columns);
+
+			assertValid(cost, assignment, columns);
+			Best best = bruteForce(cost, columns, 0, new boolean[columns], 0, 0);
+			assertThat(assigned(assignment)).isEqualTo(best.assigned);
+			assertThat(DispatchSolver.totalCost(cost, assignment)).isCloseTo(best.cost, within(1e-6));
+		}
+	}
+
+	@Test
+	void hungarianLeavesForbiddenPairsUnassigned() {
+		double[][] cost = {
+				{1, INF},
+				{INF, INF},
+				{2, 3}
+		};
+
+		int[] assignment = DispatchSolver.hungarian(cost, 2);
+
+		assertThat(assignment).containsExactly(0, -1, 1);
+	}
+
+	@Test
+	void greedyWithImprovementIsValidAndCloseToOptimal() {
+		Random random = new Random(3);
+		double[][] cost = randomCost(random, 60, 200, 0.5);
+
+		int[] optimal = DispatchSolver.hungarian(cost, 200);
+		int[] heuristic = DispatchSolver.solve(cost, 200, 0, 8, 20);
+
+		assertValid(cost, heuristic, 200);
+		assertThat(assigned(heuristic)).isEqualTo(assigned(optimal));
+		assertThat(DispatchSolver.totalCost(cost, heuristic)).isLessThanOrEqualTo(DispatchSolver.totalCost(cost, optimal) * 1.1);
+	}
+
+	@Test
+	void improveSwapsCrossedAssignments() {
+		double[][] cost = {
+				{1, 10},
+				{10, 1}
+		};
+		int[] assignment = {1, 0};
+
+		DispatchSolver.improve(cost, 2, assignment, 5);
+
+		assertThat(assignment).containsExactly(0, 1);
+	}
+
+	private static double[][] randomCost(Random random, int rows, int columns, double forbiddenRatio) {
+		double[][] cost = new double[rows][columns];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				cost[i][j] = random.nextDouble() < forbiddenRatio ? INF : random.nextInt(1000) / 10.0;
+			}
+		}
+		return cost;
+	}
+
+	private static void assertValid(double[][] cost, int[] assignment, int columns) {
+		Set<Integer> used = new HashSet<>();
+		for (int i = 0; i < assignment.length; i++) {
+			if (assignment[i] >= 0) {
+				assertThat(assignment[i]).isLessThan(columns);
+				assertThat(cost[i][assignment[i]]).isFinite();
+				assertThat(used.add(assignment[i])).isTrue();
+			}
+		}
+	}
+
+	private static int assigned(int[] assignment) {
+		int count = 0;
+		for (int j : assignment) {
+			if (j >= 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private record Best(int assigned, double cost) {
+	}
+
+	/**
+	 * Nombre maximal d'affectations, puis coût minimal parmi celles-ci.
+	 */
+	private static Best bruteForce(double[][] cost, int columns, int row, boolean[] used, int assigned, double total) {
+		if (row == cost.length) {
+			return new Best(assigned, total);
+		}
+		Best best = bruteForce(cost, columns, row + 1, used, assigned, total);
+		for (int j = 0; j < columns; j++) {
+			if (!used[j] && !Double.isInfinite(cost[row][j])) {
+				used[j] = true;
+				Best candidate = bruteForce(cost, columns, row + 1, used, assigned + 1, total + cost[row][j]);
+				used[j] = false;
+				if (candidate.assigned > best.assigned || (candidate.assigned == best.assigned && candidate.cost < best.cost)) {
+					best = candidate;
+				}
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,80 @@
+package com.eneo.support.service;
+
+import com.eneo.support.model.Message;
+import com.eneo.support.model.SenderType;
+import com.eneo.support.repository.InterventionRepository;
+import com.eneo.support.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class MessageBatchWriterTest {
+
+	private final MessageRepository messageRepository = mock(MessageRepository.class);
+	private final ChatWebSocketHandler webSocketHandler = mock(ChatWebSocketHandler.class);
+	private final Scheduler persistenceScheduler = Schedulers.newSingle("test-persistence");
+	private final AtomicLong ids = new AtomicLong();
+
+	private final MessageBatchWriter writer = new MessageBatchWriter(mock(InterventionRepository.class), messageRepository,
+			webSocketHandler, mock(PlatformTransactionManager.class), persistenceScheduler, new SimpleMeterRegistry(),
+			new RequestTracer(false, 10, 10, Duration.ofSeconds(2)), Duration.ofMillis(5), 10);
+
+	@AfterEach
+	void tearDown() {
+		writer.shutdown();
+		persistenceScheduler.dispose();
+	}
+
+	@Test
+	void slowWritesDoNotStallThePipeline() {
+		// Chaque lot prend bien plus longtemps que la fenêtre de regroupement
+		doAnswer(invocation -> {
+			Thread.sleep(50);
+			return saved(invocation.getArgument(0));
+		}).when(messageRepository).saveAll(anyList());
+
+		// Un message par milliseconde : de nombreux lots partiels sont prêts pendant chaque écriture
+		List<Message> messages = Flux.interval(Duration.ofMillis(1))
+				.take(600)
+				.flatMap(i -> writer.append(i % 7, "message " + i, SenderType.CUSTOMER), 1000)
+				.collectList()
+				.block(Duration.ofSeconds(30));
+
+		assertThat(messages).hasSize(600);
+		assertThat(writer.append(1L, "après", SenderType.CUSTOMER).block(Duration.ofSeconds(5))).isNotNull();
+	}
+
+	@Test
+	void broadcastFailureStillCompletesCallers() {
+		doAnswer(invocation -> saved(invocation.getArgument(0))).when(messageRepository).saveAll(anyList());
+		doThrow(new IllegalStateException("salon fermé")).when(webSocketHandler).sendMessage(anyLong(), any());
+
+		List<Message> messages = Flux.range(0, 5)
+				.flatMap(i -> writer.append(1L, "message " + i, SenderType.CUSTOMER))
+				.collectList()
+				.block(Duration.ofSeconds(5));
+
+		assertThat(messages).hasSize(5).allSatisfy(message -> assertThat(message.getId()).isNotNull());
+	}
+
+	private List<Message> saved(List<Message> messages) {
+		messages.forEach(message -> message.setId(ids.incrementAndGet()));
+		return messages;
+	}
+}
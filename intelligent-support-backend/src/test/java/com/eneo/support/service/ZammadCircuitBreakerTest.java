@@ -0,0 +1,107 @@
+package com.eneo.support.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZammadCircuitBreakerTest {
+
+	private final MutableClock clock = new MutableClock(Instant.parse("2024-05-01T08:00:00Z"));
+	private final ZammadCircuitBreaker breaker = new ZammadCircuitBreaker(3, Duration.ofSeconds(30), clock);
+
+	@Test
+	void opensAfterConsecutiveFailures() {
+		breaker.recordFailure();
+		breaker.recordFailure();
+		assertThat(breaker.state()).isEqualTo(ZammadCircuitBreaker.State.CLOSED);
+		assertThat(breaker.tryAcquire()).isTrue();
+
+		breaker.recordFailure();
+
+		assertThat(breaker.state()).isEqualTo(ZammadCircuitBreaker.State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+		assertThat(breaker.retryAt()).isEqualTo(clock.instant().plusSeconds(30));
+	}
+
+	@Test
+	void successResetsFailureCount() {
+		breaker.recordFailure();
+		breaker.recordFailure();
+		breaker.recordSuccess();
+		breaker.recordFailure();
+		breaker.recordFailure();
+
+		assertThat(breaker.state()).isEqualTo(ZammadCircuitBreaker.State.CLOSED);
+	}
+
+	@Test
+	void halfOpenAllowsSingleTrial() {
+		open();
+		clock.advance(Duration.ofSeconds(30));
+
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.state()).isEqualTo(ZammadCircuitBreaker.State.HALF_OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+
+		// Essai annulé : un autre appel peut le reprendre
+		breaker.releaseTrial();
+		assertThat(breaker.tryAcquire()).isTrue();
+
+		breaker.recordSuccess();
+		assertThat(breaker.state()).isEqualTo(ZammadCircuitBreaker.State.CLOSED);
+		assertThat(breaker.tryAcquire()).isTrue();
+	}
+
+	@Test
+	void failedTrialReopens() {
+		open();
+		clock.advance(Duration.ofSeconds(30));
+		assertThat(breaker.tryAcquire()).isTrue();
+
+		breaker.recordFailure();
+
+		assertThat(breaker.state()).isEqualTo(ZammadCircuitBreaker.State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+		assertThat(breaker.retryAt()).isEqualTo(clock.instant().plusSeconds(30));
+	}
+
+	private void open() {
+		for (int i = 0; i < 3; i++) {
+			breaker.recordFailure();
+		}
+		assertThat(breaker.state()).isEqualTo(ZammadCircuitBreaker.State.OPEN);
+	}
+
+	private static final class MutableClock extends Clock {
+		private Instant now;
+
+		private MutableClock(Instant now) {
+			this.now = now;
+		}
+
+		void advance(Duration duration) {
+			now = now.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package com.eneo.support.service;
+
+import com.eneo.support.dto.api.ZammadTicketResponse;
+import com.eneo.support.model.Intervention;
+import com.eneo.support.model.OutboxStatus;
+import com.eneo.support.model.ZammadOperation;
+import com.eneo.support.model.ZammadOutboxEntry;
+import com.eneo.support.model.ZammadSyncStatus;
+import com.eneo.support.repository.InterventionRepository;
+import com.eneo.support.repository.ZammadOutboxRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ZammadOutboxDispatcherTest {
+
+	private final ZammadOutboxRepository outboxRepository = mock(ZammadOutboxRepository.class);
+	private final InterventionRepository interventionRepository = mock(InterventionRepository.class);
+	private final ZammadService zammadService = mock(ZammadService.class);
+	private final ZammadUserResolver userResolver = mock(ZammadUserResolver.class);
+	private final ZammadCircuitBreaker circuitBreaker = new ZammadCircuitBreaker(5, Duration.ofSeconds(30));
+
+	private final ZammadOutboxDispatcher dispatcher = new ZammadOutboxDispatcher(outboxRepository, interventionRepository,
+			zammadService, userResolver, circuitBreaker, new ObjectMapper(), mock(PlatformTransactionManager.class),
+			Schedulers.immediate(), new SimpleMeterRegistry(), new RequestTracer(false, 10, 10, Duration.ofSeconds(2)),
+			50, 4, 3, Duration.ofSeconds(10), Duration.ofSeconds(30), 3, Duration.ofMillis(10), Duration.ofMinutes(2), Duration.ofSeconds(2), Duration.ofMinutes(10), Duration.ofDays(7));
+
+	@Test
+	void olderOperationsOfSameTicketAreSuperseded() {
+		ZammadOutboxEntry pending = stateEntry(1L, 10L, 2);
+		ZammadOutboxEntry closed = stateEntry(2L, 10L, 4);
+		when(outboxRepository.lockDueEntries(any(), anyInt())).thenReturn(List.of(pending, closed));
+		when(zammadService.updateTicketState(anyLong(), anyInt())).thenReturn(Mono.empty());
+
+		dispatcher.dispatch();
+
+		verify(zammadService).updateTicketState(10L, 4);
+		verify(zammadService, never()).updateTicketState(10L, 2);
+		assertThat(pending.getStatus()).isEqualTo(OutboxStatus.SUPERSEDED);
+		assertThat(closed.getStatus()).isEqualTo(OutboxStatus.SENT);
+		assertThat(closed.getAttempts()).isEqualTo(1);
+	}
+
+	@Test
+	void transientFailureIsRetriedWithBackoff() {
+		ZammadOutboxEntry entry = stateEntry(1L, 10L, 4);
+		when(outboxRepository.lockDueEntries(any(), anyInt())).thenReturn(List.of(entry));
+		when(zammadService.updateTicketState(anyLong(), anyInt()))
+				.thenReturn(Mono.error(WebClientResponseException.create(503, "Service Unavailable", null, null, null)));
+
+		Instant before = Instant.now();
+		dispatcher.dispatch();
+
+		assertThat(entry.getStatus()).isEqualTo(OutboxStatus.PENDING);
+		assertThat(entry.getLastError()).contains("503");
+		// Premier délai : entre la moitié et la totalité de initial-backoff
+		assertThat(entry.getNextAttemptAt()).isBetween(before.plusSeconds(1), Instant.now().plusSeconds(2));
+
+		entry.setAttempts(2);
+		dispatcher.dispatch();
+		assertThat(entry.getStatus()).isEqualTo(OutboxStatus.FAILED);
+	}
+
+	@Test
+	void clientErrorFailsImmediately() {
+		ZammadOutboxEntry entry = stateEntry(1L, 10L, 4);
+		when(outboxRepository.lockDueEntries(any(), anyInt())).thenReturn(List.of(entry));
+		when(zammadService.updateTicketState(anyLong(), anyInt()))
+				.thenReturn(Mono.error(WebClientResponseException.create(422, "Unprocessable Entity", null, null, null)));
+
+		dispatcher.dispatch();
+
+		assertThat(entry.getStatus()).isEqualTo(OutboxStatus.FAILED);
+		assertThat(circuitBreaker.state()).isEqualTo(ZammadCircuitBreaker.State.CLOSED);
+	}
+
+	@Test
+	void operationWaitsForTicketCreation() {
+		ZammadOutboxEntry entry = stateEntry(1L, null, 4);
+		entry.setInterventionId(7L);
+		when(outboxRepository.lockDueEntries(any(), anyInt())).thenReturn(List.of(entry));
+		when(interventionRepository.findZammadTicketIdById(7L)).thenReturn(Optional.empty());
+
+		dispatcher.dispatch();
+
+		verify(zammadService, never()).updateTicketState(anyLong(), anyInt());
+		assertThat(entry.getStatus()).isEqualTo(OutboxStatus.PENDING);
+		assertThat(entry.getAttempts()).isZero();
+	}
+
+	@Test
+	void resultIsOnlyWrittenWhileLeaseIsHeld() {
+		ZammadOutboxEntry entry = new ZammadOutboxEntry();
+		entry.setId(1L);
+		entry.setInterventionId(7L);
+		entry.setOperation(ZammadOperation.CREATE_TICKET);
+		// Payload illisible : échec définitif dès la première tentative
+		entry.setPayload("illisible");
+		entry.setStatus(OutboxStatus.PENDING);
+		when(outboxRepository.lockDueEntries(any(), anyInt())).thenReturn(List.of(entry));
+		// Bail expiré puis repris par une autre instance : l'UPDATE conditionnel ne touche aucune ligne
+		when(outboxRepository.completeDelivery(anyLong(), any(), any(), anyInt(), any(), any(), any(), any())).thenReturn(0);
+
+		dispatcher.dispatch();
+
+		assertThat(entry.getStatus()).isEqualTo(OutboxStatus.FAILED);
+		verify(outboxRepository).completeDelivery(eq(1L), any(), eq(OutboxStatus.FAILED), eq(1), any(), any(), any(), any());
+		verify(outboxRepository, never()).saveAll(anyList());
+		verify(interventionRepository, never()).updateZammadSyncStatus(anyList(), any());
+	}
+
+	@Test
+	void openCircuitSkipsClaim() {
+		for (int i = 0; i < 5; i++) {
+			circuitBreaker.recordFailure();
+		}
+
+		dispatcher.dispatch();
+
+		verify(outboxRepository, never()).lockDueEntries(any(), anyInt());
+	}
+
+	@Test
+	void retriedCreationReusesExistingTicket() {
+		// Une première tentative a expiré
+		ZammadOutboxEntry entry = creationEntry(1);
+		Intervention intervention = new Intervention();
+		when(outboxRepository.lockDueEntries(any(), anyInt())).thenReturn(List.of(entry));
+		when(zammadService.findTicketByReference("intervention:7")).thenReturn(Mono.just(new ZammadTicketResponse(55L, 3L)));
+		when(interventionRepository.findById(7L)).thenReturn(Optional.of(intervention));
+
+		dispatcher.dispatch();
+
+		verify(zammadService, never()).createTicket(anyString(), anyString(), anyLong(), anyDouble(), anyDouble(), anyString());
+		assertThat(entry.getStatus()).isEqualTo(OutboxStatus.SENT);
+		assertThat(intervention.getZammadTicketId()).isEqualTo(55L);
+		assertThat(intervention.getZammadSyncStatus()).isEqualTo(ZammadSyncStatus.SYNCED);
+	}
+
+	@Test
+	void searchIsRepeatedWhileTicketIsNotIndexed() {
+		ZammadOutboxEntry entry = creationEntry(1);
+		when(outboxRepository.lockDueEntries(any(), anyInt())).thenReturn(List.of(entry));
+		// Index de recherche pas encore à jour lors de la première recherche
+		when(zammadService.findTicketByReference("intervention:7"))
+				.thenReturn(Mono.empty(), Mono.just(new ZammadTicketResponse(55L, 3L)));
+		when(interventionRepository.findById(7L)).thenReturn(Optional.of(new Intervention()));
+
+		dispatcher.dispatch();
+
+		verify(zammadService, times(2)).findTicketByReference("intervention:7");
+		verify(zammadService, never()).createTicket(anyString(), anyString(), anyLong(), anyDouble(), anyDouble(), anyString());
+		assertThat(entry.getStatus()).isEqualTo(OutboxStatus.SENT);
+	}
+
+	@Test
+	void createdTicketIsRecordedAndReadBackWithoutSearch() {
+		ZammadOutboxEntry entry = creationEntry(0);
+		Intervention intervention = new Intervention();
+		when(outboxRepository.lockDueEntries(any(), anyInt())).thenReturn(List.of(entry));
+		when(userResolver.resolveUserId(any(), any(), anyString(), any())).thenReturn(Mono.just(3L));
+		when(zammadService.createTicket(anyString(), anyString(), anyLong(), anyDouble(), anyDouble(), anyString()))
+				.thenReturn(Mono.just(new ZammadTicketResponse(55L, 3L)));
+		// Rattachement local en échec : l'envoi est retenté
+		when(interventionRepository.findById(7L)).thenThrow(new IllegalStateException("base indisponible"))
+				.thenReturn(Optional.of(intervention));
+		when(zammadService.getTicket(55L)).thenReturn(Mono.just(new ZammadTicketResponse(55L, 3L)));
+
+		dispatcher.dispatch();
+		assertThat(entry.getStatus()).isEqualTo(OutboxStatus.PENDING);
+		verify(outboxRepository).recordCreatedTicket(1L, 55L);
+
+		dispatcher.dispatch();
+
+		verify(zammadService).createTicket(anyString(), anyString(), anyLong(), anyDouble(), anyDouble(), anyString());
+		verify(zammadService, never()).findTicketByReference(anyString());
+		assertThat(entry.getStatus()).isEqualTo(OutboxStatus.SENT);
+		assertThat(intervention.getZammadTicketId()).isEqualTo(55L);
+	}
+
+	private static ZammadOutboxEntry creationEntry(int attempts) {
+		ZammadOutboxEntry entry = new ZammadOutboxEntry();
+		entry.setId(1L);
+		entry.setInterventionId(7L);
+		entry.setOperation(ZammadOperation.CREATE_TICKET);
+		entry.setPayload("{\"email\":\"client@example.com\",\"title\":\"Panne\",\"message\":\"Plus de courant\",\"latitude\":4.05,\"longitude\":9.7}");
+		entry.setStatus(OutboxStatus.PENDING);
+		entry.setAttempts(attempts);
+		return entry;
+	}
+
+	private static ZammadOutboxEntry stateEntry(Long id, Long ticketId, int stateId) {
+		ZammadOutboxEntry entry = new ZammadOutboxEntry();
+		entry.setId(id);
+		entry.setZammadTicketId(ticketId);
+		entry.setOperation(ZammadOperation.UPDATE_TICKET_STATE);
+		entry.setPayload("{\"stateId\":" + stateId + "}");
+		entry.setStatus(OutboxStatus.PENDING);
+		return entry;
+	}
+}